@@ -0,0 +1,36 @@
+package com.dabsquared.gitlabjenkins;
+
+import java.io.File;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks and writes the results as JSON, so that they can be compared between revisions.
+ * Accepts the usual JMH command line options, e.g. a benchmark name pattern.
+ *
+ * The result file defaults to {@code target/jmh-result.json} and can be changed with {@code -Djmh.result=<file>}.
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        final File result = new File(System.getProperty("jmh.result", "target/jmh-result.json"));
+        result.getAbsoluteFile().getParentFile().mkdirs();
+        final Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .resultFormat(ResultFormatType.JSON)
+                .result(result.getPath())
+                .build();
+        new Runner(options).run();
+        System.out.println("Results written to " + result.getAbsolutePath());
+    }
+
+}
@@ -0,0 +1,63 @@
+package com.dabsquared.gitlabjenkins;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Branch filtering of {@link GitLabPushTrigger} with the kinds of specs found on real jobs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BranchMatchingBenchmark {
+
+    @Param({ "", "master,develop,release", "master,release/**,feature/*", "master,develop,release/**,hotfix/**,feature/**,bugfix/*,spike/*" })
+    public String includeSpec;
+
+    @Param({ "", "feature/wip-*" })
+    public String excludeSpec;
+
+    private GitLabPushTrigger trigger;
+
+    @Setup
+    public void setUp() {
+        trigger = new GitLabPushTrigger(true, true, false, false, includeSpec, excludeSpec);
+        // compile the filter outside of the measured calls
+        trigger.isBranchAllowed("master");
+    }
+
+    @Benchmark
+    public boolean matchExact() {
+        return trigger.isBranchAllowed("develop");
+    }
+
+    @Benchmark
+    public boolean matchNested() {
+        return trigger.isBranchAllowed("feature/payment-retries");
+    }
+
+    @Benchmark
+    public boolean matchNone() {
+        return trigger.isBranchAllowed("renovate/jackson-2.x");
+    }
+
+    @Benchmark
+    public GitLabRefFilter compile() {
+        return GitLabRefFilter.compile(includeSpec, excludeSpec);
+    }
+
+}
@@ -0,0 +1,160 @@
+package com.dabsquared.gitlabjenkins;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Result;
+import hudson.plugins.git.Branch;
+import hudson.plugins.git.Revision;
+import hudson.plugins.git.util.Build;
+import hudson.plugins.git.util.BuildData;
+import hudson.plugins.git.util.MergeRecord;
+import hudson.util.RunList;
+
+/**
+ * SHA and branch build lookups of {@link GitLabWebHook} (status images, status.json, merge request dedup)
+ * over a synthetic job history. Every fifth build is a merge request build, the others are pushes
+ * spread over 50 branches.
+ *
+ * The job has a real directory, so lookups go through its commit index and build summaries, which are
+ * created from the history during setup like on the first lookup of a job.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BuildLookupBenchmark {
+
+    private static final int BRANCHES = 50;
+
+    @Param({ "10000" })
+    public int builds;
+
+    private GitLabWebHook webHook;
+    private File rootDir;
+    private AbstractProject<?, ?> project;
+    private String newestSha;
+    private String middleSha;
+    private String oldestSha;
+    private String newestMergeSha;
+
+    @Setup
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public void setUp() throws IOException {
+        rootDir = File.createTempFile("build-lookup", "");
+        if (!rootDir.delete() || !rootDir.mkdirs()) {
+            throw new IOException("Could not create " + rootDir);
+        }
+        project = mock(AbstractProject.class);
+        when(project.getRootDir()).thenReturn(rootDir);
+
+        final List<AbstractBuild> history = new ArrayList<AbstractBuild>(builds);
+        for (int number = 1; number <= builds; number++) {
+            final boolean mergeBuild = number % 5 == 0;
+            final String sha = sha(number);
+            final Branch branch = new Branch("origin/" + (number == 1 ? "rarely-built" : "feature/branch-" + number % BRANCHES), ObjectId.fromString(sha));
+            final BuildData data = new BuildData();
+            data.lastBuild = new Build(new Revision(ObjectId.fromString(sha), Collections.singletonList(branch)), number, Result.SUCCESS);
+
+            final AbstractBuild build = mock(AbstractBuild.class);
+            when(build.getNumber()).thenReturn(number);
+            when(build.getResult()).thenReturn(Result.SUCCESS);
+            when(build.getAction(BuildData.class)).thenReturn(data);
+            when(build.getAction(MergeRecord.class)).thenReturn(mergeBuild ? new MergeRecord("master", sha(-number)) : null);
+            history.add(0, build);
+            doReturn(build).when(project).getBuildByNumber(number);
+
+            if (mergeBuild) {
+                newestMergeSha = sha;
+            }
+        }
+
+        when(project.getBuilds()).thenReturn(RunList.fromRuns(history));
+        webHook = new GitLabWebHook();
+
+        newestSha = sha(builds - 1);
+        middleSha = sha(builds / 2 + 1);
+        oldestSha = sha(2);
+
+        // creates the index and summaries, the measured lookups only read them
+        webHook.getBuildBySHA1(project, newestSha, false);
+        webHook.getBuildByBranch(project, "feature/branch-1");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(rootDir);
+    }
+
+    @Benchmark
+    public AbstractBuild shaNewest() {
+        return webHook.getBuildBySHA1(project, newestSha, false);
+    }
+
+    @Benchmark
+    public AbstractBuild shaMiddle() {
+        return webHook.getBuildBySHA1(project, middleSha, false);
+    }
+
+    @Benchmark
+    public AbstractBuild shaOldest() {
+        return webHook.getBuildBySHA1(project, oldestSha, false);
+    }
+
+    @Benchmark
+    public AbstractBuild shaMissing() {
+        return webHook.getBuildBySHA1(project, sha(builds + 1), false);
+    }
+
+    @Benchmark
+    public AbstractBuild shaMergeRequest() {
+        return webHook.getBuildBySHA1(project, newestMergeSha, true);
+    }
+
+    @Benchmark
+    public AbstractBuild branchRecent() {
+        return webHook.getBuildByBranch(project, "feature/branch-1");
+    }
+
+    @Benchmark
+    public AbstractBuild branchOldest() {
+        return webHook.getBuildByBranch(project, "rarely-built");
+    }
+
+    @Benchmark
+    public AbstractBuild branchMissing() {
+        return webHook.getBuildByBranch(project, "never-built");
+    }
+
+    private static String sha(int seed) {
+        return String.format("%040x", seed & 0xffffffffL);
+    }
+
+}
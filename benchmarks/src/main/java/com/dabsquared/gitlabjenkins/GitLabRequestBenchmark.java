@@ -0,0 +1,68 @@
+package com.dabsquared.gitlabjenkins;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.sf.json.JSONObject;
+
+/**
+ * Parsing and binding of webhook payloads, as done by {@link GitLabWebHook} for every delivered event.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GitLabRequestBenchmark {
+
+    private static final String DATES_PAYLOAD = "{\"object_kind\":\"merge_request\",\"object_attributes\":{"
+            + "\"created_at\":\"2015-03-03 17:23:34 UTC\",\"updated_at\":\"2015-03-04T09:12:02.000Z\"}}";
+
+    @Param({ Payloads.PUSH_SMALL, Payloads.PUSH_LARGE })
+    public String pushPayload;
+
+    private String push;
+    private String mergeRequest;
+
+    @Setup
+    public void setUp() {
+        push = Payloads.load(pushPayload);
+        mergeRequest = Payloads.load(Payloads.MERGE_REQUEST);
+    }
+
+    @Benchmark
+    public JSONObject parsePush() {
+        return JSONObject.fromObject(push);
+    }
+
+    @Benchmark
+    public GitLabPushRequest bindPush() {
+        return GitLabPushRequest.create(push);
+    }
+
+    @Benchmark
+    public GitLabMergeRequest bindMergeRequest() {
+        return GitLabMergeRequest.create(mergeRequest);
+    }
+
+    /**
+     * Both supported date formats; the second one only parses after the first one failed.
+     */
+    @Benchmark
+    public GitLabMergeRequest deserializeDates() {
+        return GitLabMergeRequest.create(DATES_PAYLOAD);
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.dabsquared.gitlabjenkins;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Webhook payloads recorded from GitLab, used as benchmark input.
+ */
+final class Payloads {
+
+    /** A push of a single commit changing a handful of files. */
+    static final String PUSH_SMALL = "push-small.json";
+    /** A push of 20 commits (GitLab's limit) each changing 30 files. */
+    static final String PUSH_LARGE = "push-large.json";
+    /** An update of an open merge request. */
+    static final String MERGE_REQUEST = "merge-request.json";
+
+    private Payloads() {
+    }
+
+    static String load(String name) {
+        final InputStream in = Payloads.class.getResourceAsStream("payloads/" + name);
+        if (in == null) {
+            throw new IllegalArgumentException("No such payload: " + name);
+        }
+        try {
+            return IOUtils.toString(in, "UTF-8");
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read payload " + name, e);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+}
@@ -0,0 +1,326 @@
+package com.dabsquared.gitlabjenkins.load;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.IOUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+/**
+ * In-process stand-in for the GitLab v3 REST API, serving the endpoints used by the plugin
+ * (projects, merge requests, branches, notes, commit statuses and compare) from generated data.
+ *
+ * Latency, error rate and a rate limit can be injected, and every call is counted per endpoint.
+ */
+public class FakeGitLabServer {
+
+    private static final String API = "/api/v3";
+
+    private static final Pattern PROJECTS = Pattern.compile(API + "/projects/?");
+    private static final Pattern PROJECT = Pattern.compile(API + "/projects/(\\d+)/?");
+    private static final Pattern MERGE_REQUESTS = Pattern.compile(API + "/projects/(\\d+)/merge_requests/?");
+    private static final Pattern MERGE_REQUEST = Pattern.compile(API + "/projects/(\\d+)/merge_requests?/(\\d+)/?");
+    private static final Pattern NOTES = Pattern.compile(API + "/projects/(\\d+)/merge_requests/(\\d+)/notes(/\\d+)?/?");
+    private static final Pattern BRANCHES = Pattern.compile(API + "/projects/(\\d+)/repository/branches/?");
+    private static final Pattern COMPARE = Pattern.compile(API + "/projects/(\\d+)/repository/compare/?");
+    private static final Pattern STATUSES = Pattern.compile(API + "/projects/(\\d+)/statuses/([0-9a-f]+)/?");
+
+    private final int projects;
+    private final int branchesPerProject;
+    private final int openMergeRequestsPerProject;
+
+    private volatile long latencyMillis;
+    private volatile long latencyJitterMillis;
+    private volatile double errorRate;
+    private volatile int requestsPerSecond;
+
+    private final Random random = new Random();
+    private final ConcurrentMap<String, AtomicLong> calls = new ConcurrentHashMap<String, AtomicLong>();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong noteIds = new AtomicLong();
+
+    private long windowStart;
+    private int windowCount;
+
+    private HttpServer server;
+
+    public FakeGitLabServer(int projects, int branchesPerProject, int openMergeRequestsPerProject) {
+        this.projects = projects;
+        this.branchesPerProject = branchesPerProject;
+        this.openMergeRequestsPerProject = openMergeRequestsPerProject;
+    }
+
+    /**
+     * Delays every response by the given latency plus a uniformly distributed jitter.
+     */
+    public FakeGitLabServer withLatency(long millis, long jitterMillis) {
+        this.latencyMillis = millis;
+        this.latencyJitterMillis = jitterMillis;
+        return this;
+    }
+
+    /**
+     * Answers the given fraction of calls with a 500 error.
+     */
+    public FakeGitLabServer withErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * Answers calls above the given rate with 429 and GitLab's rate limit headers; 0 disables the limit.
+     */
+    public FakeGitLabServer withRateLimit(int requestsPerSecond) {
+        this.requestsPerSecond = requestsPerSecond;
+        return this;
+    }
+
+    public void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext(API, new HttpHandler() {
+
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    serve(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    public String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * @return number of calls per endpoint, e.g. {@code GET merge_requests}
+     */
+    public Map<String, Long> getCalls() {
+        final Map<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : calls.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+        return result;
+    }
+
+    public long getTotalCalls() {
+        long total = 0;
+        for (AtomicLong count : calls.values()) {
+            total += count.get();
+        }
+        return total;
+    }
+
+    public long getRateLimited() {
+        return rateLimited.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        final String method = exchange.getRequestMethod();
+        final String path = exchange.getRequestURI().getPath();
+        IOUtils.toByteArray(exchange.getRequestBody());
+
+        if (isRateLimited(exchange)) {
+            rateLimited.incrementAndGet();
+            send(exchange, 429, new JSONObject().element("message", "429 Too Many Requests").toString());
+            return;
+        }
+        sleep();
+
+        Matcher m;
+        final Object body;
+        final String endpoint;
+        if (PROJECTS.matcher(path).matches()) {
+            endpoint = "projects";
+            final JSONArray array = new JSONArray();
+            for (int id = 1; id <= projects; id++) {
+                array.add(project(id));
+            }
+            body = array;
+        } else if ((m = PROJECT.matcher(path)).matches()) {
+            endpoint = "project";
+            body = project(Integer.parseInt(m.group(1)));
+        } else if ((m = MERGE_REQUESTS.matcher(path)).matches() && "GET".equals(method)) {
+            endpoint = "merge_requests";
+            final int projectId = Integer.parseInt(m.group(1));
+            final JSONArray array = new JSONArray();
+            for (int iid = 1; iid <= openMergeRequestsPerProject; iid++) {
+                array.add(mergeRequest(projectId, iid));
+            }
+            body = array;
+        } else if ((m = NOTES.matcher(path)).matches()) {
+            endpoint = "notes";
+            body = new JSONObject().element("id", noteIds.incrementAndGet()).element("body", "");
+        } else if ((m = MERGE_REQUEST.matcher(path)).matches()) {
+            endpoint = "merge_request";
+            final int projectId = Integer.parseInt(m.group(1));
+            body = mergeRequest(projectId, Integer.parseInt(m.group(2)) % 1000);
+        } else if ((m = BRANCHES.matcher(path)).matches()) {
+            endpoint = "branches";
+            final JSONArray array = new JSONArray();
+            for (int i = 0; i < branchesPerProject; i++) {
+                array.add(new JSONObject()
+                        .element("name", i == 0 ? "master" : "feature/branch-" + i)
+                        .element("protected", i == 0)
+                        .element("commit", new JSONObject().element("id", sha(m.group(1) + ":" + i))));
+            }
+            body = array;
+        } else if ((m = COMPARE.matcher(path)).matches()) {
+            endpoint = "compare";
+            final JSONArray diffs = new JSONArray();
+            diffs.add(new JSONObject().element("old_path", "src/main/java/App.java").element("new_path", "src/main/java/App.java"));
+            body = new JSONObject().element("commits", new JSONArray()).element("diffs", diffs);
+        } else if ((m = STATUSES.matcher(path)).matches()) {
+            endpoint = "statuses";
+            body = new JSONObject().element("id", noteIds.incrementAndGet()).element("sha", m.group(2)).element("status", "pending");
+        } else {
+            count(method + " unknown");
+            send(exchange, 404, new JSONObject().element("message", "404 Not Found").toString());
+            return;
+        }
+
+        count(method + " " + endpoint);
+        if (errorRate > 0 && random.nextDouble() < errorRate) {
+            failed.incrementAndGet();
+            send(exchange, 500, new JSONObject().element("message", "500 Internal Server Error").toString());
+            return;
+        }
+        send(exchange, "POST".equals(method) ? 201 : 200, body.toString());
+    }
+
+    private synchronized boolean isRateLimited(HttpExchange exchange) {
+        final int limit = requestsPerSecond;
+        if (limit <= 0) {
+            return false;
+        }
+        final long now = System.currentTimeMillis();
+        if (now - windowStart >= 1000) {
+            windowStart = now;
+            windowCount = 0;
+        }
+        windowCount++;
+        final long reset = (windowStart + 1000) / 1000;
+        exchange.getResponseHeaders().add("RateLimit-Limit", String.valueOf(limit));
+        exchange.getResponseHeaders().add("RateLimit-Remaining", String.valueOf(Math.max(0, limit - windowCount)));
+        exchange.getResponseHeaders().add("RateLimit-Reset", String.valueOf(reset));
+        if (windowCount > limit) {
+            exchange.getResponseHeaders().add("Retry-After", "1");
+            return true;
+        }
+        return false;
+    }
+
+    private void sleep() {
+        final long delay = latencyMillis + (latencyJitterMillis > 0 ? (long) (random.nextDouble() * latencyJitterMillis) : 0);
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void count(String endpoint) {
+        AtomicLong count = calls.get(endpoint);
+        if (count == null) {
+            final AtomicLong created = new AtomicLong();
+            count = calls.putIfAbsent(endpoint, created);
+            if (count == null) {
+                count = created;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        final byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        final OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static JSONObject project(int id) {
+        final String path = "group-" + id % 10 + "/project-" + id;
+        return new JSONObject()
+                .element("id", id)
+                .element("name", "project-" + id)
+                .element("path", "project-" + id)
+                .element("path_with_namespace", path)
+                .element("default_branch", "master")
+                .element("ssh_url_to_repo", "git@gitlab.example.com:" + path + ".git")
+                .element("http_url_to_repo", "http://gitlab.example.com/" + path + ".git")
+                .element("web_url", "http://gitlab.example.com/" + path);
+    }
+
+    private static JSONObject mergeRequest(int projectId, int iid) {
+        final JSONObject author = new JSONObject().element("id", 51).element("username", "aruiz").element("name", "Ana Ruiz");
+        return new JSONObject()
+                .element("id", projectId * 1000 + iid)
+                .element("iid", iid)
+                .element("project_id", projectId)
+                .element("source_project_id", projectId)
+                .element("target_branch", "master")
+                .element("source_branch", "feature/branch-" + iid)
+                .element("title", "Merge request " + iid)
+                .element("description", "")
+                .element("state", "opened")
+                .element("author", author)
+                .element("assignee", author);
+    }
+
+    static String sha(String seed) {
+        return String.format("%040x", new BigInteger(1, seed.getBytes())).substring(0, 40);
+    }
+
+    /**
+     * @return the endpoints served, for documentation and reports
+     */
+    public static List<String> getEndpoints() {
+        final List<String> endpoints = new ArrayList<String>();
+        for (Pattern pattern : new Pattern[] { PROJECTS, PROJECT, MERGE_REQUESTS, MERGE_REQUEST, NOTES, BRANCHES, COMPARE, STATUSES }) {
+            endpoints.add(pattern.pattern());
+        }
+        return endpoints;
+    }
+
+}
@@ -0,0 +1,156 @@
+package com.dabsquared.gitlabjenkins.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+/**
+ * Summary of a load run: webhook latency percentiles, builds scheduled and duplicated on the Jenkins side,
+ * and the GitLab API calls the plugin made.
+ */
+public class LoadReport {
+
+    private final JSONObject json = new JSONObject();
+
+    public LoadReport(WebhookLoadGenerator generator, JenkinsJob job, int firstBuildNumber, FakeGitLabServer gitlab) throws IOException {
+        final List<Long> latencies = generator.getLatenciesNanos();
+        Collections.sort(latencies);
+
+        final JSONObject webhook = new JSONObject()
+                .element("sent", generator.getSent())
+                .element("distinctEvents", generator.getDistinctEvents())
+                .element("redelivered", generator.getRedelivered())
+                .element("errors", generator.getErrors())
+                .element("p50Millis", percentile(latencies, 0.50))
+                .element("p90Millis", percentile(latencies, 0.90))
+                .element("p99Millis", percentile(latencies, 0.99))
+                .element("maxMillis", percentile(latencies, 1.0));
+        json.element("webhook", webhook);
+
+        final Map<String, Integer> buildsPerSha = job.getBuildsPerSha(firstBuildNumber);
+        int builds = 0;
+        int duplicates = 0;
+        for (int count : buildsPerSha.values()) {
+            builds += count;
+            duplicates += count - 1;
+        }
+        final int queued = job.getQueuedCount();
+        json.element("builds", new JSONObject()
+                .element("scheduled", builds + queued)
+                .element("started", builds)
+                .element("queued", queued)
+                .element("duplicates", duplicates));
+
+        json.element("gitlabApi", new JSONObject()
+                .element("calls", gitlab.getTotalCalls())
+                .element("perEndpoint", gitlab.getCalls())
+                .element("rateLimited", gitlab.getRateLimited())
+                .element("failed", gitlab.getFailed()));
+    }
+
+    public void write(File file) throws IOException {
+        FileUtils.writeStringToFile(file, json.toString(2), "UTF-8");
+    }
+
+    @Override
+    public String toString() {
+        return json.toString(2);
+    }
+
+    private static double percentile(List<Long> sorted, double p) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        final int index = (int) Math.min(sorted.size() - 1, Math.ceil(p * sorted.size()) - 1);
+        return sorted.get(Math.max(0, index)) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Reads builds and queue items of the job under test through the Jenkins remote API.
+     */
+    public static class JenkinsJob {
+
+        private final String jenkinsUrl;
+        private final String jobPath;
+        private final String authorization;
+
+        public JenkinsJob(String jenkinsUrl, String jobName, String user, String apiToken) {
+            this.jenkinsUrl = jenkinsUrl.endsWith("/") ? jenkinsUrl : jenkinsUrl + "/";
+            this.jobPath = "job/" + jobName.replace("/", "/job/") + "/";
+            this.authorization = user == null ? null : "Basic " + Base64.encodeBase64String((user + ":" + apiToken).getBytes()).trim();
+        }
+
+        public String getWebhookUrl(String jobName) {
+            return jenkinsUrl + "project/" + jobName;
+        }
+
+        public int getNextBuildNumber() throws IOException {
+            return get(jobPath + "api/json?tree=nextBuildNumber").getInt("nextBuildNumber");
+        }
+
+        public int getQueuedCount() throws IOException {
+            final JSONObject queue = get("queue/api/json?tree=items[task[url]]");
+            int count = 0;
+            for (Object item : queue.getJSONArray("items")) {
+                final String url = ((JSONObject) item).getJSONObject("task").optString("url");
+                if (url.endsWith(jobPath)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * @return number of builds per built commit, for builds from the given number on
+         */
+        public Map<String, Integer> getBuildsPerSha(int firstBuildNumber) throws IOException {
+            final JSONObject builds = get(jobPath + "api/json?tree=builds[number,actions[lastBuiltRevision[SHA1]]]");
+            final Map<String, Integer> result = new HashMap<String, Integer>();
+            for (Object b : builds.getJSONArray("builds")) {
+                final JSONObject build = (JSONObject) b;
+                if (build.getInt("number") < firstBuildNumber) {
+                    continue;
+                }
+                String sha = "#" + build.getInt("number");
+                for (Object a : build.optJSONArray("actions") == null ? new JSONArray() : build.getJSONArray("actions")) {
+                    final JSONObject action = a instanceof JSONObject ? (JSONObject) a : null;
+                    if (action != null && action.has("lastBuiltRevision")) {
+                        sha = action.getJSONObject("lastBuiltRevision").getString("SHA1");
+                    }
+                }
+                final Integer count = result.get(sha);
+                result.put(sha, count == null ? 1 : count + 1);
+            }
+            return result;
+        }
+
+        private JSONObject get(String path) throws IOException {
+            final HttpURLConnection connection = (HttpURLConnection) new URL(jenkinsUrl + path).openConnection();
+            if (authorization != null) {
+                connection.setRequestProperty("Authorization", authorization);
+            }
+            final InputStream in = connection.getInputStream();
+            try {
+                return JSONObject.fromObject(IOUtils.toString(in, "UTF-8"));
+            } finally {
+                in.close();
+            }
+        }
+
+    }
+
+}
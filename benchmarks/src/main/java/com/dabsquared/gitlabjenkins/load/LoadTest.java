@@ -0,0 +1,119 @@
+package com.dabsquared.gitlabjenkins.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Fires a burst of webhook events at a test Jenkins whose GitLab connection points to a {@link FakeGitLabServer},
+ * then reports latencies, scheduled and duplicate builds and GitLab API calls.
+ *
+ * <pre>
+ * java -cp benchmarks.jar com.dabsquared.gitlabjenkins.load.LoadTest \
+ *     --jenkins http://localhost:8080/jenkins --job my-job --rate 50 --duration 60 \
+ *     [--gitlab-port 8888] [--gitlab-latency 50] [--gitlab-jitter 50] [--gitlab-errors 0.01] [--gitlab-rate-limit 100] \
+ *     [--redeliveries 0.05] [--merge-requests 0.2] [--concurrency 16] [--settle 30] \
+ *     [--payloads dir] [--user name --token apiToken] [--report target/load-report.json]
+ * </pre>
+ *
+ * Configure the GitLab host URL of the Jenkins under test to the URL printed on startup before the run begins.
+ */
+public final class LoadTest {
+
+    private static final String[] RECORDED_PUSHES = { "push-small.json", "push-large.json" };
+    private static final String[] RECORDED_MERGE_REQUESTS = { "merge-request.json" };
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        final Map<String, String> options = parse(args);
+        final String jenkins = require(options, "jenkins");
+        final String jobName = require(options, "job");
+
+        final FakeGitLabServer gitlab = new FakeGitLabServer(integer(options, "projects", 50), integer(options, "branches", 20), integer(options, "open-merge-requests", 5))
+                .withLatency(integer(options, "gitlab-latency", 20), integer(options, "gitlab-jitter", 20))
+                .withErrorRate(decimal(options, "gitlab-errors", 0))
+                .withRateLimit(integer(options, "gitlab-rate-limit", 0));
+        gitlab.start(integer(options, "gitlab-port", 8888));
+        System.out.println("Fake GitLab API listening on " + gitlab.getUrl());
+
+        try {
+            final LoadReport.JenkinsJob job = new LoadReport.JenkinsJob(jenkins, jobName, options.get("user"), options.get("token"));
+            final int firstBuildNumber = job.getNextBuildNumber();
+
+            final WebhookLoadGenerator generator = new WebhookLoadGenerator(new URL(job.getWebhookUrl(jobName)),
+                    payloads(options.get("payloads"), RECORDED_PUSHES), payloads(options.get("payloads"), RECORDED_MERGE_REQUESTS),
+                    integer(options, "concurrency", 16))
+                    .withMergeRequestRatio(decimal(options, "merge-requests", 0.2))
+                    .withRedeliveryRatio(decimal(options, "redeliveries", 0.05));
+            generator.run(decimal(options, "rate", 10), integer(options, "duration", 60));
+
+            // let the trigger queue and the GitLab calls made on completion drain
+            TimeUnit.SECONDS.sleep(integer(options, "settle", 30));
+
+            final LoadReport report = new LoadReport(generator, job, firstBuildNumber, gitlab);
+            final File file = new File(options.containsKey("report") ? options.get("report") : "target/load-report.json");
+            file.getAbsoluteFile().getParentFile().mkdirs();
+            report.write(file);
+            System.out.println(report);
+            System.out.println("Report written to " + file.getAbsolutePath());
+        } finally {
+            gitlab.stop();
+        }
+    }
+
+    private static List<String> payloads(String directory, String[] names) throws IOException {
+        final List<String> payloads = new ArrayList<String>();
+        for (String name : names) {
+            if (directory != null) {
+                payloads.add(FileUtils.readFileToString(new File(directory, name), "UTF-8"));
+            } else {
+                final InputStream in = LoadTest.class.getResourceAsStream("/com/dabsquared/gitlabjenkins/payloads/" + name);
+                try {
+                    payloads.add(IOUtils.toString(in, "UTF-8"));
+                } finally {
+                    IOUtils.closeQuietly(in);
+                }
+            }
+        }
+        return payloads;
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        final Map<String, String> options = new HashMap<String, String>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+
+    private static String require(Map<String, String> options, String name) {
+        final String value = options.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing required option --" + name);
+        }
+        return value;
+    }
+
+    private static int integer(Map<String, String> options, String name, int defaultValue) {
+        return options.containsKey(name) ? Integer.parseInt(options.get(name)) : defaultValue;
+    }
+
+    private static double decimal(Map<String, String> options, String name, double defaultValue) {
+        return options.containsKey(name) ? Double.parseDouble(options.get(name)) : defaultValue;
+    }
+
+}
@@ -0,0 +1,176 @@
+package com.dabsquared.gitlabjenkins.load;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+/**
+ * Replays recorded push and merge request payloads against a Jenkins webhook URL at a fixed rate.
+ *
+ * Each event is turned into a distinct one (new after SHA, new last commit) so that it is a real change
+ * for the plugin; a configurable fraction is sent again unchanged to mimic GitLab redeliveries.
+ */
+public class WebhookLoadGenerator {
+
+    private final URL webhookUrl;
+    private final List<String> pushPayloads;
+    private final List<String> mergeRequestPayloads;
+    private final int concurrency;
+
+    private double mergeRequestRatio = 0.2;
+    private double redeliveryRatio = 0.05;
+
+    private final Random random = new Random(42);
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final List<Long> latenciesNanos = Collections.synchronizedList(new ArrayList<Long>());
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong redelivered = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final List<String> sentShas = Collections.synchronizedList(new ArrayList<String>());
+
+    public WebhookLoadGenerator(URL webhookUrl, List<String> pushPayloads, List<String> mergeRequestPayloads, int concurrency) {
+        this.webhookUrl = webhookUrl;
+        this.pushPayloads = pushPayloads;
+        this.mergeRequestPayloads = mergeRequestPayloads;
+        this.concurrency = concurrency;
+    }
+
+    public WebhookLoadGenerator withMergeRequestRatio(double mergeRequestRatio) {
+        this.mergeRequestRatio = mergeRequestRatio;
+        return this;
+    }
+
+    public WebhookLoadGenerator withRedeliveryRatio(double redeliveryRatio) {
+        this.redeliveryRatio = redeliveryRatio;
+        return this;
+    }
+
+    /**
+     * Sends events at the given rate for the given duration and waits for all responses.
+     */
+    public void run(double eventsPerSecond, long durationSeconds) throws InterruptedException {
+        final ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        final long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / eventsPerSecond);
+        final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds);
+        long next = System.nanoTime();
+        String previous = null;
+        while (next < end) {
+            final String payload;
+            if (previous != null && random.nextDouble() < redeliveryRatio) {
+                payload = previous;
+                redelivered.incrementAndGet();
+            } else {
+                payload = nextEvent();
+            }
+            previous = payload;
+            workers.execute(new Runnable() {
+
+                public void run() {
+                    post(payload);
+                }
+
+            });
+
+            next += intervalNanos;
+            final long wait = next - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        }
+        workers.shutdown();
+        workers.awaitTermination(5, TimeUnit.MINUTES);
+    }
+
+    public List<Long> getLatenciesNanos() {
+        synchronized (latenciesNanos) {
+            return new ArrayList<Long>(latenciesNanos);
+        }
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public long getRedelivered() {
+        return redelivered.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * @return the distinct commit SHAs sent, i.e. the builds expected at most
+     */
+    public int getDistinctEvents() {
+        return sentShas.size();
+    }
+
+    private String nextEvent() {
+        final int n = sequence.incrementAndGet();
+        final String sha = FakeGitLabServer.sha("load-" + n);
+        sentShas.add(sha);
+        if (!mergeRequestPayloads.isEmpty() && random.nextDouble() < mergeRequestRatio) {
+            final JSONObject json = JSONObject.fromObject(mergeRequestPayloads.get(n % mergeRequestPayloads.size()));
+            final JSONObject attributes = json.getJSONObject("object_attributes");
+            attributes.getJSONObject("last_commit").element("id", sha);
+            return json.toString();
+        }
+
+        final JSONObject json = JSONObject.fromObject(pushPayloads.get(n % pushPayloads.size()));
+        final String before = json.getString("after");
+        json.element("before", before).element("after", sha).element("checkout_sha", sha);
+        final JSONArray commits = json.optJSONArray("commits");
+        if (commits != null && !commits.isEmpty()) {
+            commits.getJSONObject(commits.size() - 1).element("id", sha);
+        }
+        return json.toString();
+    }
+
+    private void post(String payload) {
+        final long start = System.nanoTime();
+        try {
+            final HttpURLConnection connection = (HttpURLConnection) webhookUrl.openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            final OutputStream out = connection.getOutputStream();
+            try {
+                out.write(payload.getBytes("UTF-8"));
+            } finally {
+                out.close();
+            }
+            final int status = connection.getResponseCode();
+            final InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+            if (in != null) {
+                IOUtils.toByteArray(in);
+                in.close();
+            }
+            if (status >= 400) {
+                errors.incrementAndGet();
+            }
+        } catch (IOException e) {
+            errors.incrementAndGet();
+        } finally {
+            latenciesNanos.add(System.nanoTime() - start);
+            sent.incrementAndGet();
+        }
+    }
+
+}
@@ -1,21 +1,32 @@
 package com.dabsquared.gitlabjenkins;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.gitlab.api.GitlabAPI;
+import org.gitlab.api.models.GitlabBranch;
+import org.gitlab.api.models.GitlabMergeRequest;
+import org.gitlab.api.models.GitlabNote;
+import org.gitlab.api.models.GitlabProject;
 
 public class GitLab {
 
     private static final Logger LOGGER = Logger.getLogger(GitLab.class.getName());
+    private final GitLabConnection connection;
     private GitlabAPI api;
 
+    public GitLab(GitLabConnection connection) {
+        this.connection = connection;
+    }
+
     public GitlabAPI instance() {
         if (api == null) {
-            String token = GitLabPushTrigger.getDesc().getGitlabApiToken();
-            String url = GitLabPushTrigger.getDesc().getGitlabHostUrl();
-            boolean ignoreCertificateErrors = GitLabPushTrigger.getDesc().getIgnoreCertificateErrors();
+            String token = connection.getApiToken();
+            String url = connection.getUrl();
+            boolean ignoreCertificateErrors = connection.getIgnoreCertificateErrors();
             LOGGER.log(Level.FINE, "Connecting to Gitlab server ({0})", url);
             api = GitlabAPI.connect(url, token);
             api.ignoreCertificateErrors(ignoreCertificateErrors);
@@ -24,6 +35,143 @@ public class GitLab {
         return api;
     }
 
+    public GitlabProject getProject(final Integer projectId) throws IOException {
+        return connection.getGuard().execute("getProject", new GitLabApiGuard.Call<GitlabProject>() {
+
+            public GitlabProject call() throws IOException {
+                return instance().getProject(projectId);
+            }
+
+        });
+    }
+
+    public GitLabProjectActivity getProjectActivity(Integer projectId) throws IOException {
+        final String tailUrl = GitlabProject.URL + "/" + projectId;
+        return connection.getGuard().execute("getProjectActivity", new GitLabApiGuard.Call<GitLabProjectActivity>() {
+
+            public GitLabProjectActivity call() throws IOException {
+                return instance().retrieve().to(tailUrl, GitLabProjectActivity.class);
+            }
+
+        });
+    }
+
+    public List<GitlabProject> getProjects() throws IOException {
+        return connection.getGuard().execute("getProjects", new GitLabApiGuard.Call<List<GitlabProject>>() {
+
+            public List<GitlabProject> call() throws IOException {
+                return instance().getProjects();
+            }
+
+        });
+    }
+
+    public List<GitlabBranch> getBranches(final GitlabProject project) throws IOException {
+        return connection.getGuard().execute("getBranches", new GitLabApiGuard.Call<List<GitlabBranch>>() {
+
+            public List<GitlabBranch> call() throws IOException {
+                return instance().getBranches(project);
+            }
+
+        });
+    }
+
+    public List<GitlabMergeRequest> getMergeRequests(final Integer projectId) throws IOException {
+        return connection.getGuard().execute("getMergeRequests", new GitLabApiGuard.Call<List<GitlabMergeRequest>>() {
+
+            public List<GitlabMergeRequest> call() throws IOException {
+                return instance().getMergeRequests(projectId);
+            }
+
+        });
+    }
+
+    public GitlabMergeRequest getMergeRequest(final GitlabProject project, final Integer mergeRequestId) throws IOException {
+        return connection.getGuard().execute("getMergeRequest", new GitLabApiGuard.Call<GitlabMergeRequest>() {
+
+            public GitlabMergeRequest call() throws IOException {
+                return instance().getMergeRequest(project, mergeRequestId);
+            }
+
+        });
+    }
+
+    public GitlabNote createNote(final GitlabMergeRequest mergeRequest, final String body) throws IOException {
+        return connection.getGuard().execute("createNote", new GitLabApiGuard.Call<GitlabNote>() {
+
+            public GitlabNote call() throws IOException {
+                return instance().createNote(mergeRequest, body);
+            }
+
+        });
+    }
+
+    public GitlabNote updateNote(GitlabMergeRequest mergeRequest, Integer noteId, final String body) throws IOException {
+        final String tailUrl = GitlabProject.URL + "/" + mergeRequest.getProjectId() + GitlabMergeRequest.URL + "/" + mergeRequest.getId()
+                + GitlabNote.URL + "/" + noteId;
+        return connection.getGuard().execute("updateNote", new GitLabApiGuard.Call<GitlabNote>() {
+
+            public GitlabNote call() throws IOException {
+                return instance().dispatch().method("PUT").with("body", body).to(tailUrl, GitlabNote.class);
+            }
+
+        });
+    }
+
+    public GitLabCompare compare(Integer projectId, String from, String to) throws IOException {
+        final String tailUrl = GitlabProject.URL + "/" + projectId + GitLabCompare.URL + "?from=" + from + "&to=" + to;
+        return connection.getGuard().execute("compare", new GitLabApiGuard.Call<GitLabCompare>() {
+
+            public GitLabCompare call() throws IOException {
+                return instance().retrieve().to(tailUrl, GitLabCompare.class);
+            }
+
+        });
+    }
+
+    public GitLabCommit getCommit(Integer projectId, String sha) throws IOException {
+        final String tailUrl = GitlabProject.URL + "/" + projectId + GitLabCommit.URL + "/" + sha;
+        return connection.getGuard().execute("getCommit", new GitLabApiGuard.Call<GitLabCommit>() {
+
+            public GitLabCommit call() throws IOException {
+                return instance().retrieve().to(tailUrl, GitLabCommit.class);
+            }
+
+        });
+    }
+
+    /**
+     * @return the entries at the root of the repository tree of the given commit
+     */
+    public List<GitLabTreeEntry> getTree(Integer projectId, String sha) throws IOException {
+        final String tailUrl = GitlabProject.URL + "/" + projectId + GitLabTreeEntry.URL + "?ref_name=" + sha;
+        return connection.getGuard().execute("getTree", new GitLabApiGuard.Call<List<GitLabTreeEntry>>() {
+
+            public List<GitLabTreeEntry> call() throws IOException {
+                return Arrays.asList(instance().retrieve().to(tailUrl, GitLabTreeEntry[].class));
+            }
+
+        });
+    }
+
+    public GitLabCommitStatus createCommitStatus(Integer projectId, String sha, final String ref, final String state, final String name,
+                                                 final String targetUrl, final String description) throws IOException {
+        final String tailUrl = GitlabProject.URL + "/" + projectId + GitLabCommitStatus.URL + "/" + sha;
+        return connection.getGuard().execute("createCommitStatus", new GitLabApiGuard.Call<GitLabCommitStatus>() {
+
+            public GitLabCommitStatus call() throws IOException {
+                return instance().dispatch()
+                        .with("state", state)
+                        .with("ref", ref)
+                        .with("name", name)
+                        .with("target_url", targetUrl)
+                        .with("description", description)
+                        .to(tailUrl, GitLabCommitStatus.class);
+            }
+
+        });
+    }
+
     public static boolean checkConnection(String token, String url, boolean ignoreCertificateErrors) throws IOException {
         GitlabAPI testApi = GitlabAPI.connect(url, token);
         testApi.ignoreCertificateErrors(ignoreCertificateErrors);
@@ -0,0 +1,200 @@
+package com.dabsquared.gitlabjenkins;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Guards the calls made to the API of one GitLab server.
+ *
+ * The number of concurrent calls is adapted to GitLab's responsiveness: it grows by one per window of
+ * fast successful calls and is halved on slow, failed or rate limited ones (AIMD). After a run of failures,
+ * or when GitLab answers with 429, the circuit opens and calls fail immediately with a
+ * {@link GitLabUnavailableException} until a trial call succeeds, so callers fall back to their defaults
+ * instead of piling up on socket timeouts.
+ */
+public class GitLabApiGuard {
+
+    private static final Logger LOGGER = Logger.getLogger(GitLabApiGuard.class.getName());
+
+    private static final String PREFIX = GitLabApiGuard.class.getName();
+    private static final int MIN_LIMIT = 1;
+    private static final int MAX_LIMIT = Integer.getInteger(PREFIX + ".maxConcurrency", 16);
+    private static final long SLOW_CALL_MILLIS = Long.getLong(PREFIX + ".slowCallMillis", 2000L);
+    private static final long ACQUIRE_TIMEOUT_MILLIS = Long.getLong(PREFIX + ".acquireTimeoutMillis", 5000L);
+    private static final int FAILURE_THRESHOLD = Integer.getInteger(PREFIX + ".failureThreshold", 5);
+    private static final long OPEN_MILLIS = Long.getLong(PREFIX + ".openMillis", 30000L);
+    private static final long RATE_LIMITED_MILLIS = Long.getLong(PREFIX + ".rateLimitedMillis", 60000L);
+
+    /**
+     * A single GitLab API call.
+     */
+    public interface Call<T> {
+
+        T call() throws IOException;
+
+    }
+
+    private final String connectionName;
+    private double limit = Math.min(4, MAX_LIMIT);
+    private int inFlight;
+    private int consecutiveFailures;
+    private long openUntil;
+    private boolean trialInFlight;
+    private long rejected;
+
+    public GitLabApiGuard(String connectionName) {
+        this.connectionName = connectionName;
+    }
+
+    public <T> T execute(String name, Call<T> call) throws IOException {
+        final boolean trial = acquire(name);
+        final long start = System.nanoTime();
+        Outcome outcome = Outcome.FAILED;
+        try {
+            final T result = call.call();
+            outcome = Outcome.of(start);
+            return result;
+        } catch (FileNotFoundException e) {
+            // a 404 is an answer, not a failure of GitLab
+            outcome = Outcome.of(start);
+            throw e;
+        } catch (IOException e) {
+            outcome = isRateLimited(e) ? Outcome.RATE_LIMITED : Outcome.FAILED;
+            LOGGER.log(Level.FINE, "GitLab call " + name + " failed (" + outcome + ")", e);
+            throw e;
+        } finally {
+            release(trial, outcome);
+        }
+    }
+
+    /**
+     * Closes the circuit and forgets the observed failures, e.g. after the connection settings changed.
+     */
+    public synchronized void reset() {
+        consecutiveFailures = 0;
+        openUntil = 0;
+        trialInFlight = false;
+        notifyAll();
+    }
+
+    public synchronized boolean isOpen() {
+        return openUntil != 0;
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized long getRejectedCount() {
+        return rejected;
+    }
+
+    /**
+     * @return true if the caller makes the trial call of a half open circuit
+     */
+    private synchronized boolean acquire(String name) throws GitLabUnavailableException {
+        if (openUntil != 0) {
+            if (System.currentTimeMillis() < openUntil || trialInFlight) {
+                rejected++;
+                throw new GitLabUnavailableException(connectionName + " is unavailable, skipping " + name);
+            }
+            trialInFlight = true;
+            inFlight++;
+            return true;
+        }
+
+        final long deadline = System.currentTimeMillis() + ACQUIRE_TIMEOUT_MILLIS;
+        while (inFlight >= (int) limit) {
+            final long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0 || openUntil != 0) {
+                rejected++;
+                throw new GitLabUnavailableException("Too many concurrent calls to " + connectionName + ", skipping " + name);
+            }
+            try {
+                wait(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                rejected++;
+                throw new GitLabUnavailableException("Interrupted while waiting to call " + connectionName + ", skipping " + name);
+            }
+        }
+        inFlight++;
+        return false;
+    }
+
+    private synchronized void release(boolean trial, Outcome outcome) {
+        inFlight--;
+        if (trial) {
+            trialInFlight = false;
+        }
+        switch (outcome) {
+            case FAST:
+            case SLOW:
+                consecutiveFailures = 0;
+                if (trial) {
+                    LOGGER.log(Level.INFO, "{0} is reachable again, resuming API calls", connectionName);
+                    openUntil = 0;
+                    // webhook deliveries may have been lost meanwhile
+                    GitLabReconciler.requestRun();
+                }
+                if (outcome == Outcome.FAST) {
+                    limit = Math.min(MAX_LIMIT, limit + 1 / limit);
+                } else {
+                    decrease();
+                }
+                break;
+            case RATE_LIMITED:
+                decrease();
+                open(RATE_LIMITED_MILLIS, "API calls are rate limited");
+                break;
+            default:
+                decrease();
+                if (trial || ++consecutiveFailures >= FAILURE_THRESHOLD) {
+                    open(OPEN_MILLIS, "API calls keep failing");
+                }
+                break;
+        }
+        notifyAll();
+    }
+
+    private void decrease() {
+        limit = Math.max(MIN_LIMIT, limit / 2);
+    }
+
+    private void open(long millis, String reason) {
+        if (openUntil == 0) {
+            LOGGER.log(Level.WARNING, "{0} on {1}, pausing them for {2} seconds", new Object[] { reason, connectionName, TimeUnit.MILLISECONDS.toSeconds(millis) });
+        }
+        openUntil = System.currentTimeMillis() + millis;
+    }
+
+    /**
+     * The API client does not expose response headers, so a rate limit is recognized from the
+     * status code carried by the exception (or its cause) and answered with a fixed pause.
+     */
+    private static boolean isRateLimited(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            final String message = t.getMessage();
+            if (message != null && (message.contains("response code: 429") || message.contains("429 Too Many Requests"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private enum Outcome {
+        FAST, SLOW, FAILED, RATE_LIMITED;
+
+        private static Outcome of(long startNanos) {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) > SLOW_CALL_MILLIS ? SLOW : FAST;
+        }
+    }
+
+}
@@ -0,0 +1,316 @@
+package com.dabsquared.gitlabjenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.transport.RemoteConfig;
+import org.eclipse.jgit.transport.URIish;
+import org.gitlab.api.models.GitlabBranch;
+import org.gitlab.api.models.GitlabProject;
+
+import net.sf.json.JSONObject;
+
+import hudson.Extension;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Cause;
+import hudson.model.Queue;
+import hudson.model.TaskListener;
+import hudson.plugins.git.GitSCM;
+import hudson.scm.SCM;
+import hudson.security.ACL;
+
+import jenkins.model.Jenkins;
+
+/**
+ * Detects pushes through the GitLab API for jobs whose trigger polls GitLab, a cheap replacement for SCM polling
+ * where webhooks can't reach Jenkins.
+ *
+ * Jobs are grouped by GitLab connection and project, so that each project costs one request per round when
+ * nothing happened since the previous one, and one more to list its branch heads when something did. Heads
+ * allowed by a job's branch filter that moved since the job's previous round, and that no build has picked
+ * up already, are passed to the trigger as push events. The first round of a job only records the heads.
+ *
+ * Heads the trigger received a webhook for are recorded when it arrives, so that a push still in the quiet
+ * period, the trigger's queue or the build dispatcher isn't built a second time; the Jenkins queue is checked
+ * as well. Repositories that match no GitLab project are looked up again only after a while.
+ */
+@Extension
+public class GitLabApiPoller extends AsyncPeriodicWork {
+
+    private static final Logger LOGGER = Logger.getLogger(GitLabApiPoller.class.getName());
+
+    private static final String PREFIX = GitLabApiPoller.class.getName();
+    private static final boolean DISABLED = Boolean.getBoolean(PREFIX + ".disabled");
+    private static final long PERIOD_SECONDS = Long.getLong(PREFIX + ".periodSeconds", 60L);
+    private static final long UNKNOWN_PROJECT_RETRY_MINUTES = Long.getLong(PREFIX + ".unknownProjectRetryMinutes", 60L);
+
+    static final String FILE_NAME = "gitlab-poll.json";
+
+    /** Last activity of each polled project, by connection and project id. */
+    private static final ConcurrentMap<String, String> ACTIVITIES = new ConcurrentHashMap<String, String>();
+    /** When repositories matching no GitLab project were looked up, by connection and repository URL. */
+    private static final ConcurrentMap<String, Long> UNKNOWN_PROJECTS = new ConcurrentHashMap<String, Long>();
+    private static final Object STATE_LOCK = new Object();
+
+    public GitLabApiPoller() {
+        super("GitLab API polling");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return TimeUnit.SECONDS.toMillis(PERIOD_SECONDS);
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException, InterruptedException {
+        if (!DISABLED) {
+            ACL.impersonate(ACL.SYSTEM, new Runnable() {
+
+                public void run() {
+                    pollAll();
+                }
+
+            });
+        }
+    }
+
+    private static synchronized void pollAll() {
+        final Map<String, List<AbstractProject<?, ?>>> groups = new LinkedHashMap<String, List<AbstractProject<?, ?>>>();
+        final Map<String, GitLabConnection> connections = new LinkedHashMap<String, GitLabConnection>();
+        for (AbstractProject<?, ?> job : GitLabTriggerRegistry.getJobs()) {
+            final GitLabPushTrigger trigger = GitLabTriggerRegistry.get(job);
+            if (trigger == null || !trigger.getPollGitLabApi() || job.getRootDir() == null) {
+                continue;
+            }
+            final GitLabConnection connection = trigger.getConnection();
+            if (connection == null) {
+                continue;
+            }
+            try {
+                final Integer projectId = resolveProjectId(job, connection);
+                if (projectId == null) {
+                    LOGGER.log(Level.FINE, "Not polling {0}: its GitLab project is unknown", job.getFullName());
+                    continue;
+                }
+                final String key = connection.getName() + ":" + projectId;
+                List<AbstractProject<?, ?>> jobs = groups.get(key);
+                if (jobs == null) {
+                    jobs = new ArrayList<AbstractProject<?, ?>>();
+                    groups.put(key, jobs);
+                    connections.put(key, connection);
+                }
+                jobs.add(job);
+            } catch (GitLabUnavailableException e) {
+                LOGGER.log(Level.FINE, "Not polling {0}: {1}", new Object[] { job.getFullName(), e.getMessage() });
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not find the GitLab project of " + job.getFullName(), e);
+            }
+        }
+
+        for (Map.Entry<String, List<AbstractProject<?, ?>>> group : groups.entrySet()) {
+            final String key = group.getKey();
+            final int projectId = Integer.parseInt(key.substring(key.lastIndexOf(':') + 1));
+            try {
+                poll(connections.get(key), projectId, key, group.getValue());
+            } catch (GitLabUnavailableException e) {
+                LOGGER.log(Level.FINE, "Not polling GitLab project {0}: {1}", new Object[] { String.valueOf(projectId), e.getMessage() });
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not poll GitLab project " + projectId, e);
+            }
+        }
+        ACTIVITIES.keySet().retainAll(groups.keySet());
+    }
+
+    private static void poll(GitLabConnection connection, int projectId, String key, List<AbstractProject<?, ?>> jobs) throws IOException {
+        // the project's last activity stands in for a conditional request: its branches are only listed when it moved
+        final String activity = String.valueOf(connection.getClient().getProjectActivity(projectId).getLastActivityAt());
+        if (activity.equals(ACTIVITIES.get(key)) && hasBaselines(jobs)) {
+            return;
+        }
+
+        final GitlabProject project = new GitlabProject();
+        project.setId(projectId);
+        final Map<String, String> heads = new LinkedHashMap<String, String>();
+        for (GitlabBranch branch : connection.getClient().getBranches(project)) {
+            if (branch.getCommit() != null) {
+                heads.put(branch.getName(), branch.getCommit().getId());
+            }
+        }
+        connection.getBranchCache().putBranches(projectId, new ArrayList<String>(heads.keySet()));
+
+        boolean complete = true;
+        for (AbstractProject<?, ?> job : jobs) {
+            final GitLabPushTrigger trigger = GitLabTriggerRegistry.get(job);
+            if (trigger == null) {
+                continue;
+            }
+            try {
+                poll(job, trigger, connection, projectId, heads);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not poll GitLab for " + job.getFullName(), e);
+                complete = false;
+            }
+        }
+        if (complete) {
+            ACTIVITIES.put(key, activity);
+        }
+    }
+
+    /**
+     * Records a branch head the trigger received a push for, so that polling doesn't pass it on again.
+     */
+    static void decided(AbstractProject<?, ?> job, Integer projectId, String branch, String sha) {
+        if (projectId == null || job.getRootDir() == null) {
+            return;
+        }
+        final File file = new File(job.getRootDir(), FILE_NAME);
+        synchronized (STATE_LOCK) {
+            try {
+                if (!file.exists()) {
+                    return;
+                }
+                final JSONObject state = JSONObject.fromObject(FileUtils.readFileToString(file, "UTF-8"));
+                final JSONObject heads = state.optJSONObject("heads");
+                if (heads != null && state.optInt("projectId", -1) == projectId && !sha.equals(heads.optString(branch, null))) {
+                    heads.put(branch, sha);
+                    FileUtils.writeStringToFile(file, state.toString(), "UTF-8");
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not record the head of " + branch + " for " + job.getFullName(), e);
+            }
+        }
+    }
+
+    private static void poll(AbstractProject<?, ?> job, GitLabPushTrigger trigger, GitLabConnection connection, int projectId,
+                             Map<String, String> heads) throws IOException {
+        synchronized (STATE_LOCK) {
+            pollLocked(job, trigger, connection, projectId, heads);
+        }
+    }
+
+    private static void pollLocked(AbstractProject<?, ?> job, GitLabPushTrigger trigger, GitLabConnection connection, int projectId,
+                                   Map<String, String> heads) throws IOException {
+        final File file = new File(job.getRootDir(), FILE_NAME);
+        final JSONObject state = file.exists() ? JSONObject.fromObject(FileUtils.readFileToString(file, "UTF-8")) : new JSONObject();
+        final boolean baseline = state.optInt("projectId", -1) != projectId;
+        final JSONObject seenHeads = baseline ? new JSONObject() : state.getJSONObject("heads");
+        final GitLabCommitIndex index = GitLabCommitIndex.of(job);
+
+        final JSONObject newHeads = new JSONObject();
+        for (Map.Entry<String, String> head : heads.entrySet()) {
+            if (!trigger.isBranchAllowed(head.getKey())) {
+                continue;
+            }
+            newHeads.put(head.getKey(), head.getValue());
+            final String previous = seenHeads.optString(head.getKey(), null);
+            if (baseline || head.getValue().equals(previous) || isBuilt(job, index, head.getValue())) {
+                continue;
+            }
+            LOGGER.log(Level.INFO, "GitLab API polling found {0} on {1} for {2}", new Object[] { head.getValue(), head.getKey(), job.getFullName() });
+            trigger.onPost(GitLabReconciler.createPush(connection, projectId, head.getKey(), previous, head.getValue(), "GitLab API polling"));
+        }
+
+        if (baseline || !newHeads.equals(seenHeads)) {
+            state.put("projectId", projectId);
+            state.put("heads", newHeads);
+            FileUtils.writeStringToFile(file, state.toString(), "UTF-8");
+        }
+    }
+
+    private static boolean hasBaselines(List<AbstractProject<?, ?>> jobs) {
+        for (AbstractProject<?, ?> job : jobs) {
+            if (!new File(job.getRootDir(), FILE_NAME).exists()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return whether a build of the commit is queued, running or done, e.g. because its webhook made it through
+     */
+    private static boolean isBuilt(AbstractProject<?, ?> job, GitLabCommitIndex index, String sha) throws IOException {
+        for (Queue.Item item : Jenkins.getInstance().getQueue().getItems(job)) {
+            for (Cause cause : item.getCauses()) {
+                if (cause instanceof GitLabPushCause && sha.equals(((GitLabPushCause) cause).getCommit())) {
+                    return true;
+                }
+            }
+        }
+        for (AbstractBuild<?, ?> build : GitLabCommitIndex.getRunningBuilds(job)) {
+            // running builds may not have checked out yet, their cause tells what they were triggered for
+            final GitLabPushCause cause = build.getCause(GitLabPushCause.class);
+            if (cause != null && sha.equals(cause.getCommit()) || sha.equals(GitLabBuildSummary.of(build).getSha())) {
+                return true;
+            }
+        }
+        return !index.find(job, sha, false).isEmpty();
+    }
+
+    /**
+     * @return the GitLab project the job received events from, or the one of the job's git repository
+     */
+    private static Integer resolveProjectId(AbstractProject<?, ?> job, GitLabConnection connection) throws IOException {
+        Integer projectId = GitLabReconciler.getProjectId(job);
+        if (projectId != null) {
+            return projectId;
+        }
+        final String repositoryUrl = getRepositoryUrl(job);
+        if (repositoryUrl == null) {
+            return null;
+        }
+        final GitLabBranchCache branchCache = connection.getBranchCache();
+        projectId = branchCache.getProjectId(repositoryUrl);
+        if (projectId == null) {
+            // listing every project is expensive, don't repeat it each round for a repository GitLab doesn't have
+            final String unknownKey = connection.getName() + ":" + repositoryUrl;
+            final Long lookedUp = UNKNOWN_PROJECTS.get(unknownKey);
+            if (lookedUp != null && System.currentTimeMillis() - lookedUp < TimeUnit.MINUTES.toMillis(UNKNOWN_PROJECT_RETRY_MINUTES)) {
+                return null;
+            }
+            for (GitlabProject project : connection.getClient().getProjects()) {
+                if (repositoryUrl.equalsIgnoreCase(project.getSshUrl()) || repositoryUrl.equalsIgnoreCase(project.getHttpUrl())) {
+                    projectId = project.getId();
+                    branchCache.putProjectId(repositoryUrl, projectId);
+                    break;
+                }
+            }
+            if (projectId == null) {
+                UNKNOWN_PROJECTS.put(unknownKey, System.currentTimeMillis());
+            } else {
+                UNKNOWN_PROJECTS.remove(unknownKey);
+            }
+        }
+        if (projectId != null) {
+            GitLabReconciler.seen(job, projectId);
+        }
+        return projectId;
+    }
+
+    private static String getRepositoryUrl(AbstractProject<?, ?> job) {
+        final SCM scm = job.getScm();
+        if (!(scm instanceof GitSCM)) {
+            return null;
+        }
+        // same repository as the default gitlabSourceRepoURL
+        final List<RemoteConfig> repositories = ((GitSCM) scm).getRepositories();
+        if (repositories.isEmpty()) {
+            return null;
+        }
+        final List<URIish> uris = repositories.get(repositories.size() - 1).getURIs();
+        return uris.isEmpty() ? null : uris.get(uris.size() - 1).toString();
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.dabsquared.gitlabjenkins;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Short-lived cache of GitLab branch names used for branch spec completion and validation,
+ * so that typing in the trigger configuration doesn't list every project and branch on each keystroke.
+ *
+ * Entries are kept up to date from push events: created branches invalidate the project's list,
+ * deleted branches are evicted from it.
+ */
+public class GitLabBranchCache {
+
+    private static final long EXPIRY_MINUTES = Long.getLong(GitLabBranchCache.class.getName() + ".expiryMinutes", 5L);
+
+    // shared by all connections, keys start with the connection name
+    private static final GitLabCacheManager.NamedCache<String, Integer> PROJECT_IDS = GitLabCacheManager.get()
+            .register("project-ids", 1, EXPIRY_MINUTES, TimeUnit.MINUTES, false);
+
+    private static final GitLabCacheManager.NamedCache<String, List<String>> BRANCHES = GitLabCacheManager.get()
+            .register("branches", 2, EXPIRY_MINUTES, TimeUnit.MINUTES, false);
+
+    private final String prefix;
+
+    public GitLabBranchCache(String connectionName) {
+        this.prefix = connectionName + '|';
+    }
+
+    public Integer getProjectId(String repositoryUrl) {
+        return PROJECT_IDS.get(prefix + repositoryUrl.toLowerCase());
+    }
+
+    public void putProjectId(String repositoryUrl, Integer projectId) {
+        PROJECT_IDS.put(prefix + repositoryUrl.toLowerCase(), projectId);
+    }
+
+    public List<String> getBranches(Integer projectId) {
+        return BRANCHES.get(prefix + projectId);
+    }
+
+    public void putBranches(Integer projectId, List<String> branchNames) {
+        BRANCHES.put(prefix + projectId, Collections.unmodifiableList(new ArrayList<String>(branchNames)));
+    }
+
+    public void onBranchCreated(Integer projectId, String branchName) {
+        if (projectId != null) {
+            BRANCHES.remove(prefix + projectId);
+        }
+    }
+
+    public void onBranchDeleted(Integer projectId, String branchName) {
+        if (projectId == null) {
+            return;
+        }
+        final String key = prefix + projectId;
+        List<String> current;
+        List<String> updated;
+        do {
+            current = BRANCHES.get(key);
+            if (current == null || !current.contains(branchName)) {
+                return;
+            }
+            updated = new ArrayList<String>(current);
+            updated.remove(branchName);
+        } while (!BRANCHES.replace(key, current, Collections.unmodifiableList(updated)));
+    }
+
+    public void clear() {
+        clear(PROJECT_IDS.keys());
+        clear(BRANCHES.keys());
+    }
+
+    private void clear(Collection<String> keys) {
+        for (Iterator<String> it = keys.iterator(); it.hasNext();) {
+            if (it.next().startsWith(prefix)) {
+                it.remove();
+            }
+        }
+    }
+
+}
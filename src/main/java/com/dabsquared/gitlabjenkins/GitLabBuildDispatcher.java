@@ -0,0 +1,403 @@
+package com.dabsquared.gitlabjenkins;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.base.Splitter;
+
+import hudson.Extension;
+import hudson.model.Cause;
+import hudson.model.ManagementLink;
+import hudson.model.Queue;
+import hudson.model.queue.QueueListener;
+
+import jenkins.util.Timer;
+
+/**
+ * Puts the builds triggered by GitLab into the Jenkins queue fairly.
+ *
+ * The builds queued or running for one GitLab project, and for one branch of it, are capped; builds
+ * above a cap wait here until one of them finishes. Waiting builds are released lane by lane
+ * (pushes before merge request updates) and, within a lane, round-robin between GitLab projects,
+ * each project getting as many turns in a row as its weight.
+ *
+ * A slot is held by the cause of the build that took it, and only that cause releases it: a build that
+ * Jenkins folded into one already queued releases its slot at once, and the queued one releases its own.
+ * The "GitLab Build Dispatcher" management page shows the waiting builds and waiting times of each lane.
+ */
+public class GitLabBuildDispatcher {
+
+    private static final Logger LOGGER = Logger.getLogger(GitLabBuildDispatcher.class.getName());
+
+    private static final String PREFIX = GitLabBuildDispatcher.class.getName();
+    private static final int MAX_PER_PROJECT = Integer.getInteger(PREFIX + ".maxPerProject", 20);
+    private static final int MAX_PER_BRANCH = Integer.getInteger(PREFIX + ".maxPerBranch", 5);
+    private static final Map<String, Integer> WEIGHTS = parseWeights(System.getProperty(PREFIX + ".projectWeights", ""));
+
+    private static final GitLabBuildDispatcher INSTANCE = new GitLabBuildDispatcher();
+
+    /**
+     * Priority classes of triggered builds, highest first.
+     */
+    public enum Lane {
+        PUSH, MERGE_REQUEST
+    }
+
+    /**
+     * A build waiting for its turn.
+     */
+    public interface Ticket {
+
+        /**
+         * Puts the build into the Jenkins queue.
+         *
+         * @return false if Jenkins refused the build
+         */
+        boolean schedule();
+
+    }
+
+    private final Map<String, Integer> outstandingPerProject = new HashMap<String, Integer>();
+    private final Map<String, Integer> outstandingPerBranch = new HashMap<String, Integer>();
+    /** Causes of the builds holding a slot; causes aren't compared by value, a build may have several equal ones. */
+    private final Set<Cause> holders = Collections.newSetFromMap(new IdentityHashMap<Cause, Boolean>());
+    private final Map<Lane, ArrayDeque<ProjectQueue>> lanes = new EnumMap<Lane, ArrayDeque<ProjectQueue>>(Lane.class);
+    private final Map<Lane, LaneStats> stats = new EnumMap<Lane, LaneStats>(Lane.class);
+
+    GitLabBuildDispatcher() {
+        for (Lane lane : Lane.values()) {
+            lanes.put(lane, new ArrayDeque<ProjectQueue>());
+            stats.put(lane, new LaneStats());
+        }
+    }
+
+    public static GitLabBuildDispatcher get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Schedules the build for the given cause now if its GitLab project and branch are below their caps,
+     * or as soon as they are.
+     */
+    public void submit(Cause cause, Ticket ticket) {
+        final Waiting waiting = new Waiting(cause, ticket);
+        if (waiting.project == null) {
+            ticket.schedule();
+            return;
+        }
+        synchronized (this) {
+            park(waiting);
+        }
+        dispatch();
+    }
+
+    /**
+     * Releases the slots taken by builds that finished or left the queue without running.
+     */
+    public void onFinished(List<Cause> causes) {
+        boolean triggered = false;
+        for (Cause cause : causes) {
+            triggered |= cause instanceof GitLabPushCause || cause instanceof GitLabMergeCause;
+        }
+        if (!triggered) {
+            // builds that weren't triggered by GitLab hold no slot, don't take the lock for them
+            return;
+        }
+        boolean released = false;
+        synchronized (this) {
+            for (Cause cause : causes) {
+                final String[] key = keyOf(cause);
+                // builds queued before a restart, or folded into another queued build, hold no slot
+                if (key[0] != null && holders.remove(cause)) {
+                    decrement(outstandingPerProject, key[0]);
+                    decrement(outstandingPerBranch, key[0] + '|' + key[1]);
+                    released = true;
+                }
+            }
+        }
+        if (released) {
+            // called from queue and run listeners, so hand the queue its new builds from elsewhere
+            Timer.get().submit(new Runnable() {
+
+                public void run() {
+                    dispatch();
+                }
+
+            });
+        }
+    }
+
+    public synchronized int getWaitingCount(Lane lane) {
+        int count = 0;
+        for (ProjectQueue queue : lanes.get(lane)) {
+            count += queue.waiting.size();
+        }
+        return count;
+    }
+
+    public LaneStats getStats(Lane lane) {
+        return stats.get(lane);
+    }
+
+    /**
+     * Releases waiting builds while the caps allow it.
+     */
+    private void dispatch() {
+        Waiting next;
+        while ((next = next()) != null) {
+            run(next);
+        }
+    }
+
+    private synchronized Waiting next() {
+        for (Lane lane : Lane.values()) {
+            final ArrayDeque<ProjectQueue> projects = lanes.get(lane);
+            for (int i = 0; i < projects.size(); i++) {
+                final ProjectQueue queue = projects.peekFirst();
+                final Waiting waiting = queue.poll();
+                if (waiting == null) {
+                    projects.addLast(projects.pollFirst());
+                    continue;
+                }
+                if (queue.waiting.isEmpty()) {
+                    projects.pollFirst();
+                } else if (--queue.credits <= 0) {
+                    queue.credits = queue.weight;
+                    projects.addLast(projects.pollFirst());
+                }
+                acquire(waiting);
+                return waiting;
+            }
+        }
+        return null;
+    }
+
+    private void run(Waiting waiting) {
+        stats.get(waiting.lane).record(System.currentTimeMillis() - waiting.since);
+        boolean scheduled = false;
+        try {
+            scheduled = waiting.ticket.schedule();
+        } finally {
+            if (!scheduled) {
+                onFinished(Collections.singletonList(waiting.cause));
+            }
+        }
+    }
+
+    private boolean isAllowed(Waiting waiting) {
+        return count(outstandingPerProject, waiting.project) < MAX_PER_PROJECT
+                && count(outstandingPerBranch, waiting.project + '|' + waiting.branch) < MAX_PER_BRANCH;
+    }
+
+    private void park(Waiting waiting) {
+        final ArrayDeque<ProjectQueue> projects = lanes.get(waiting.lane);
+        for (ProjectQueue queue : projects) {
+            if (queue.project.equals(waiting.project)) {
+                queue.waiting.add(waiting);
+                return;
+            }
+        }
+        final ProjectQueue queue = new ProjectQueue(waiting.project);
+        queue.waiting.add(waiting);
+        projects.addLast(queue);
+    }
+
+    private void acquire(Waiting waiting) {
+        holders.add(waiting.cause);
+        increment(outstandingPerProject, waiting.project);
+        increment(outstandingPerBranch, waiting.project + '|' + waiting.branch);
+    }
+
+    private static int count(Map<String, Integer> counts, String key) {
+        final Integer count = counts.get(key);
+        return count == null ? 0 : count;
+    }
+
+    private static void increment(Map<String, Integer> counts, String key) {
+        counts.put(key, count(counts, key) + 1);
+    }
+
+    private static void decrement(Map<String, Integer> counts, String key) {
+        final int count = count(counts, key) - 1;
+        if (count > 0) {
+            counts.put(key, count);
+        } else {
+            counts.remove(key);
+        }
+    }
+
+    /**
+     * @return the GitLab project and the target branch of a triggered build, nulls for other causes
+     */
+    private static String[] keyOf(Cause cause) {
+        if (cause instanceof GitLabPushCause && ((GitLabPushCause) cause).getProjectId() != null) {
+            final GitLabPushCause push = (GitLabPushCause) cause;
+            return new String[] { String.valueOf(push.getProjectId()), push.getRef() };
+        }
+        if (cause instanceof GitLabMergeCause) {
+            final GitLabMergeRequest.ObjectAttributes attributes = ((GitLabMergeCause) cause).getMergeRequest().getObjectAttribute();
+            if (attributes.getTargetProjectId() != null) {
+                return new String[] { String.valueOf(attributes.getTargetProjectId()), attributes.getTargetBranch() };
+            }
+        }
+        return new String[] { null, null };
+    }
+
+    private static Map<String, Integer> parseWeights(String spec) {
+        final Map<String, Integer> weights = new HashMap<String, Integer>();
+        for (String entry : Splitter.on(',').omitEmptyStrings().trimResults().split(spec)) {
+            final int separator = entry.indexOf('=');
+            try {
+                weights.put(entry.substring(0, separator).trim(), Math.max(1, Integer.parseInt(entry.substring(separator + 1).trim())));
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Ignoring invalid GitLab project weight: {0}", entry);
+            }
+        }
+        return weights;
+    }
+
+    private static final class Waiting {
+
+        private final Cause cause;
+        private final Ticket ticket;
+        private final Lane lane;
+        private final String project;
+        private final String branch;
+        private final long since = System.currentTimeMillis();
+
+        private Waiting(Cause cause, Ticket ticket) {
+            final String[] key = keyOf(cause);
+            this.cause = cause;
+            this.ticket = ticket;
+            this.lane = cause instanceof GitLabMergeCause ? Lane.MERGE_REQUEST : Lane.PUSH;
+            this.project = key[0];
+            this.branch = key[1];
+        }
+
+    }
+
+    private final class ProjectQueue {
+
+        private final String project;
+        private final int weight;
+        private final ArrayDeque<Waiting> waiting = new ArrayDeque<Waiting>();
+        private int credits;
+
+        private ProjectQueue(String project) {
+            this.project = project;
+            this.weight = WEIGHTS.containsKey(project) ? WEIGHTS.get(project) : 1;
+            this.credits = weight;
+        }
+
+        /**
+         * @return the first waiting build whose caps allow it to run
+         */
+        private Waiting poll() {
+            for (Iterator<Waiting> it = waiting.iterator(); it.hasNext();) {
+                final Waiting next = it.next();
+                if (isAllowed(next)) {
+                    it.remove();
+                    return next;
+                }
+            }
+            return null;
+        }
+
+    }
+
+    /**
+     * Time spent waiting for a turn by the builds of one lane.
+     */
+    public static final class LaneStats {
+
+        private final AtomicLong dispatched = new AtomicLong();
+        private final AtomicLong totalWaitMillis = new AtomicLong();
+        private final AtomicLong maxWaitMillis = new AtomicLong();
+
+        private void record(long waitMillis) {
+            dispatched.incrementAndGet();
+            totalWaitMillis.addAndGet(waitMillis);
+            long max;
+            while (waitMillis > (max = maxWaitMillis.get()) && !maxWaitMillis.compareAndSet(max, waitMillis)) {
+                // retry
+            }
+        }
+
+        public long getDispatched() {
+            return dispatched.get();
+        }
+
+        public long getAverageWaitMillis() {
+            final long count = dispatched.get();
+            return count == 0 ? 0 : totalWaitMillis.get() / count;
+        }
+
+        public long getMaxWaitMillis() {
+            return maxWaitMillis.get();
+        }
+
+    }
+
+    @Extension
+    public static class ManagementLinkImpl extends ManagementLink {
+
+        public GitLabBuildDispatcher getDispatcher() {
+            return INSTANCE;
+        }
+
+        public Lane[] getLanes() {
+            return Lane.values();
+        }
+
+        public int getMaxPerProject() {
+            return MAX_PER_PROJECT;
+        }
+
+        public int getMaxPerBranch() {
+            return MAX_PER_BRANCH;
+        }
+
+        @Override
+        public String getIconFileName() {
+            return "clock.png";
+        }
+
+        @Override
+        public String getUrlName() {
+            return "gitlab-dispatcher";
+        }
+
+        public String getDisplayName() {
+            return "GitLab Build Dispatcher";
+        }
+
+        @Override
+        public String getDescription() {
+            return "Builds triggered by GitLab waiting for their turn, and how long they waited.";
+        }
+
+    }
+
+    @Extension
+    public static class QueueListenerImpl extends QueueListener {
+
+        @Override
+        public void onLeft(Queue.LeftItem li) {
+            if (li.isCancelled()) {
+                INSTANCE.onFinished(li.getCauses());
+            }
+        }
+
+    }
+
+}
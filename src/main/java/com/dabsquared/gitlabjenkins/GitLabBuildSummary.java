@@ -0,0 +1,361 @@
+package com.dabsquared.gitlabjenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Result;
+import hudson.plugins.git.Branch;
+import hudson.plugins.git.util.Build;
+import hudson.plugins.git.util.BuildData;
+import hudson.plugins.git.util.MergeRecord;
+
+/**
+ * What the webhook needs to know about a build: built commit and branches, whether it was a merge build,
+ * its result and merge request.
+ *
+ * The summary of a completed build is written to a small file in the job's {@code gitlab-summaries}
+ * directory, so status lookups don't load the build and its git data. The directory also holds the number
+ * of the latest completed build of each branch, so that finding it reads one summary rather than all of
+ * them. Running builds are tracked by the {@link GitLabCommitIndex} and summarized on the fly.
+ *
+ * Only jobs whose summaries were created by a lookup pay for this as their builds complete; other jobs
+ * get their summaries on their first lookup.
+ */
+public class GitLabBuildSummary {
+
+    private static final Logger LOGGER = Logger.getLogger(GitLabBuildSummary.class.getName());
+
+    static final String DIR_NAME = "gitlab-summaries";
+    static final String BRANCHES_FILE_NAME = "branches.json";
+
+    private final int number;
+    private final String sha;
+    private final List<String> branches;
+    private final boolean mergeBuild;
+    private final Result result;
+    private final Integer mergeRequestIid;
+
+    private GitLabBuildSummary(int number, String sha, List<String> branches, boolean mergeBuild, Result result, Integer mergeRequestIid) {
+        this.number = number;
+        this.sha = sha;
+        this.branches = branches;
+        this.mergeBuild = mergeBuild;
+        this.result = result;
+        this.mergeRequestIid = mergeRequestIid;
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public String getSha() {
+        return sha;
+    }
+
+    public List<String> getBranches() {
+        return branches;
+    }
+
+    public boolean isMergeBuild() {
+        return mergeBuild;
+    }
+
+    /**
+     * @return the result, null while the build is running
+     */
+    public Result getResult() {
+        return result;
+    }
+
+    public boolean isBuilding() {
+        return result == null;
+    }
+
+    public Integer getMergeRequestIid() {
+        return mergeRequestIid;
+    }
+
+    /**
+     * @return true if the build built the given branch, e.g. {@code master} for {@code origin/master}
+     */
+    public boolean isOnBranch(String branch) {
+        for (String name : branches) {
+            if (name.endsWith("/" + branch)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Summarizes a loaded build.
+     */
+    public static GitLabBuildSummary of(AbstractBuild<?, ?> build) {
+        final BuildData data = build.getAction(BuildData.class);
+        final Build b = data == null ? null : data.lastBuild;
+        String sha = null;
+        boolean mergeBuild = false;
+        final List<String> branches = new ArrayList<String>();
+        if (b != null && b.getMarked() != null) {
+            sha = b.getMarked().getSha1String();
+            final MergeRecord merge = build.getAction(MergeRecord.class);
+            mergeBuild = merge != null && !merge.getSha1().equals(sha);
+            if (b.getRevision() != null) {
+                for (Branch branch : b.getRevision().getBranches()) {
+                    branches.add(branch.getName());
+                }
+            }
+        }
+        final GitLabMergeCause cause = build.getCause(GitLabMergeCause.class);
+        final Integer iid = cause == null ? null : cause.getMergeRequest().getObjectAttribute().getIid();
+        return new GitLabBuildSummary(build.getNumber(), sha, branches, mergeBuild, build.isBuilding() ? null : build.getResult(), iid);
+    }
+
+    /**
+     * @return the summary of a completed build, null if there is none
+     */
+    public static GitLabBuildSummary load(AbstractProject<?, ?> project, int number) throws IOException {
+        final File file = new File(ensureDir(project), number + ".json");
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            final JSONObject json = JSONObject.fromObject(FileUtils.readFileToString(file, "UTF-8"));
+            final List<String> branches = new ArrayList<String>();
+            for (Object branch : json.getJSONArray("branches")) {
+                branches.add(String.valueOf(branch));
+            }
+            return new GitLabBuildSummary(json.getInt("number"), json.has("sha") ? json.getString("sha") : null, branches,
+                                          json.getBoolean("merge"), Result.fromString(json.getString("result")),
+                                          json.has("mergeRequestIid") ? json.getInt("mergeRequestIid") : null);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Could not read " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the summary of the latest completed build of the given branch that isn't a merge build,
+     *         null if there is none
+     */
+    public static GitLabBuildSummary loadLatest(AbstractProject<?, ?> project, String branch) throws IOException {
+        final File dir = ensureDir(project);
+        int latest = -1;
+        synchronized (GitLabBuildSummary.class) {
+            final JSONObject pointers = readBranches(project, dir);
+            for (Object name : pointers.keySet()) {
+                if (String.valueOf(name).endsWith("/" + branch)) {
+                    latest = Math.max(latest, pointers.getInt(String.valueOf(name)));
+                }
+            }
+        }
+        return latest < 0 ? null : load(project, latest);
+    }
+
+    /**
+     * @return numbers of the completed builds that have a summary, newest first
+     */
+    private static List<Integer> getNumbers(AbstractProject<?, ?> project) throws IOException {
+        final File dir = ensureDir(project);
+        final List<Integer> numbers = new ArrayList<Integer>();
+        final String[] names = dir.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.endsWith(".json")) {
+                    try {
+                        numbers.add(Integer.parseInt(name.substring(0, name.length() - ".json".length())));
+                    } catch (NumberFormatException e) {
+                        // not a summary
+                    }
+                }
+            }
+        }
+        Collections.sort(numbers, Collections.reverseOrder());
+        return numbers;
+    }
+
+    /**
+     * Writes the summary of the completed build, unless the job's summaries haven't been created yet
+     * (they are then created with it).
+     */
+    static void onCompleted(AbstractBuild<?, ?> build) throws IOException {
+        final File dir = getDir(build.getProject());
+        if (!dir.exists()) {
+            // a lookup creating the summaries meanwhile picks the build up
+            return;
+        }
+        synchronized (GitLabBuildSummary.class) {
+            if (dir.exists()) {
+                final GitLabBuildSummary summary = of(build);
+                summary.save(dir);
+                final JSONObject pointers = readBranches(build.getProject(), dir);
+                if (summary.point(pointers)) {
+                    writeBranches(dir, pointers);
+                }
+            }
+        }
+    }
+
+    static void onDeleted(AbstractBuild<?, ?> build) {
+        final File dir = getDir(build.getProject());
+        final File file = new File(dir, build.getNumber() + ".json");
+        synchronized (GitLabBuildSummary.class) {
+            if (file.exists() && !file.delete()) {
+                LOGGER.log(Level.WARNING, "Could not delete {0}", file);
+            }
+            final File branches = new File(dir, BRANCHES_FILE_NAME);
+            final JSONObject pointers = branches.exists() ? readBranchesFile(branches) : null;
+            if (branches.exists() && (pointers == null || pointers.containsValue(build.getNumber())) && !branches.delete()) {
+                // rebuilt from the remaining summaries on the next lookup
+                LOGGER.log(Level.WARNING, "Could not delete {0}", branches);
+            }
+        }
+    }
+
+    /**
+     * Makes this summary the latest build of its branches if it is newer than the builds they point to.
+     *
+     * @return whether a pointer changed
+     */
+    private boolean point(JSONObject pointers) {
+        if (mergeBuild) {
+            return false;
+        }
+        boolean changed = false;
+        for (String branch : branches) {
+            if (pointers.optInt(branch, -1) < number) {
+                pointers.put(branch, number);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return the latest build of each branch, rebuilt from the summaries if the file is missing or corrupt;
+     *         it is missing for summaries written by earlier versions and after the latest build of a branch
+     *         was deleted
+     */
+    private static JSONObject readBranches(AbstractProject<?, ?> project, File dir) throws IOException {
+        final File file = new File(dir, BRANCHES_FILE_NAME);
+        JSONObject pointers = file.exists() ? readBranchesFile(file) : null;
+        if (pointers != null) {
+            return pointers;
+        }
+        pointers = new JSONObject();
+        for (int number : getNumbers(project)) {
+            final GitLabBuildSummary summary = load(project, number);
+            if (summary != null) {
+                summary.point(pointers);
+            }
+        }
+        writeBranches(dir, pointers);
+        return pointers;
+    }
+
+    /**
+     * @return the latest build of each branch, null if the file can't be read
+     */
+    private static JSONObject readBranchesFile(File file) {
+        try {
+            return JSONObject.fromObject(FileUtils.readFileToString(file, "UTF-8"));
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not read " + file, e);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Could not read " + file, e);
+        }
+        return null;
+    }
+
+    private static void writeBranches(File dir, JSONObject pointers) throws IOException {
+        FileUtils.writeStringToFile(new File(dir, BRANCHES_FILE_NAME), pointers.toString(), "UTF-8");
+    }
+
+    private void save(File dir) throws IOException {
+        final JSONObject json = new JSONObject();
+        json.put("number", number);
+        if (sha != null) {
+            json.put("sha", sha);
+        }
+        json.put("branches", JSONArray.fromObject(branches));
+        json.put("merge", mergeBuild);
+        json.put("result", result == null ? Result.NOT_BUILT.toString() : result.toString());
+        if (mergeRequestIid != null) {
+            json.put("mergeRequestIid", mergeRequestIid);
+        }
+        FileUtils.writeStringToFile(new File(dir, number + ".json"), json.toString(), "UTF-8");
+    }
+
+    private static void create(AbstractProject<?, ?> project, File dir) throws IOException {
+        final File tmp = new File(dir.getParentFile(), DIR_NAME + ".tmp");
+        FileUtils.deleteDirectory(tmp);
+        if (!tmp.mkdirs()) {
+            throw new IOException("Could not create " + tmp);
+        }
+        final JSONObject pointers = new JSONObject();
+        final List<AbstractBuild<?, ?>> building = new ArrayList<AbstractBuild<?, ?>>();
+        int newest = 0;
+        for (AbstractBuild<?, ?> build : project.getBuilds()) {
+            newest = Math.max(newest, build.getNumber());
+            if (build.isBuilding()) {
+                building.add(build);
+            } else {
+                final GitLabBuildSummary summary = of(build);
+                summary.save(tmp);
+                summary.point(pointers);
+            }
+        }
+        writeBranches(tmp, pointers);
+        if (!tmp.renameTo(dir)) {
+            FileUtils.deleteDirectory(tmp);
+            throw new IOException("Could not create " + dir);
+        }
+        // builds that started or completed meanwhile were skipped by the run listener, as there was no directory
+        for (AbstractBuild<?, ?> build : project.getBuilds()) {
+            if (build.getNumber() <= newest) {
+                break;
+            }
+            building.add(build);
+        }
+        boolean changed = false;
+        for (AbstractBuild<?, ?> build : building) {
+            if (build.isBuilding()) {
+                GitLabCommitIndex.track(build);
+            } else {
+                final GitLabBuildSummary summary = of(build);
+                summary.save(dir);
+                changed |= summary.point(pointers);
+            }
+        }
+        if (changed) {
+            writeBranches(dir, pointers);
+        }
+    }
+
+    private static File ensureDir(AbstractProject<?, ?> project) throws IOException {
+        final File dir = getDir(project);
+        synchronized (GitLabBuildSummary.class) {
+            if (!dir.exists()) {
+                create(project, dir);
+            }
+        }
+        return dir;
+    }
+
+    private static File getDir(AbstractProject<?, ?> project) {
+        return new File(project.getRootDir(), DIR_NAME);
+    }
+
+}
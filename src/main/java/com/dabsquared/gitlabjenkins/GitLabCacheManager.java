@@ -0,0 +1,422 @@
+package com.dabsquared.gitlabjenkins;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+
+import hudson.Extension;
+import hudson.model.ManagementLink;
+
+import jenkins.model.Jenkins;
+
+/**
+ * Holds the plugin's in-memory caches under a single memory budget, so that no cache can grow at the
+ * expense of the rest of the controller.
+ *
+ * Each named cache gets a share of the budget and evicts its least recently used entries once the estimated
+ * size of its keys and values exceeds that share. Caches count their hits, misses, evictions and load times
+ * for the "GitLab Caches" management page, where they can also be flushed. Changing the budget resizes every
+ * cache, keeping the entries that still fit.
+ */
+public class GitLabCacheManager {
+
+    private static final Logger LOGGER = Logger.getLogger(GitLabCacheManager.class.getName());
+
+    static final int DEFAULT_BUDGET_MEGABYTES = Integer.getInteger(GitLabCacheManager.class.getName() + ".budgetMegabytes", 64);
+
+    private static final long MEGABYTE = 1024L * 1024L;
+
+    private static final GitLabCacheManager INSTANCE = new GitLabCacheManager();
+
+    private final List<NamedCache<?, ?>> caches = new ArrayList<NamedCache<?, ?>>();
+    private volatile long budget = DEFAULT_BUDGET_MEGABYTES * MEGABYTE;
+
+    /**
+     * The plugin's cache manager; see {@link GitLabPushTrigger.DescriptorImpl#getCacheManager()}, which configures it.
+     * Caches are created when their classes load, which may be before the descriptor is.
+     */
+    static GitLabCacheManager get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the cache with the given name, created with the given share of the budget unless it exists
+     */
+    public <K, V> NamedCache<K, V> register(String name, int share) {
+        return register(name, share, 0, null, false);
+    }
+
+    /**
+     * @param expiry       how long entries are kept after they were written, or last read if {@code sinceAccess}
+     * @param unit         unit of {@code expiry}
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <K, V> NamedCache<K, V> register(String name, int share, long expiry, TimeUnit unit, boolean sinceAccess) {
+        for (NamedCache<?, ?> cache : caches) {
+            if (cache.getName().equals(name)) {
+                return (NamedCache<K, V>) cache;
+            }
+        }
+        final NamedCache<K, V> cache = new NamedCache<K, V>(name, share, unit == null ? 0 : unit.toMillis(expiry), sinceAccess);
+        caches.add(cache);
+        resize();
+        return cache;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    public int getBudgetMegabytes() {
+        return (int) (budget / MEGABYTE);
+    }
+
+    public synchronized void setBudgetMegabytes(int megabytes) {
+        final long bytes = Math.max(1, megabytes) * MEGABYTE;
+        if (bytes != budget) {
+            LOGGER.log(Level.INFO, "Resizing the GitLab caches to {0} MB", Math.max(1, megabytes));
+            budget = bytes;
+            resize();
+        }
+    }
+
+    public synchronized List<NamedCache<?, ?>> getCaches() {
+        return new ArrayList<NamedCache<?, ?>>(caches);
+    }
+
+    public synchronized NamedCache<?, ?> getCache(String name) {
+        for (NamedCache<?, ?> cache : caches) {
+            if (cache.getName().equals(name)) {
+                return cache;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the estimated size of all cached entries, in bytes
+     */
+    public long getWeight() {
+        long weight = 0;
+        for (NamedCache<?, ?> cache : getCaches()) {
+            weight += cache.getWeight();
+        }
+        return weight;
+    }
+
+    public void flush() {
+        for (NamedCache<?, ?> cache : getCaches()) {
+            cache.flush();
+        }
+    }
+
+    private void resize() {
+        int shares = 0;
+        for (NamedCache<?, ?> cache : caches) {
+            shares += cache.getShare();
+        }
+        for (NamedCache<?, ?> cache : caches) {
+            cache.resize(budget * cache.getShare() / shares);
+        }
+    }
+
+    /**
+     * Estimates the memory taken by a cached key or value, in bytes. Strings, numbers and collections or maps
+     * of them are measured, other objects are counted as small ones unless they are {@link Sized}.
+     */
+    static long sizeOf(Object o) {
+        if (o == null) {
+            return 0;
+        }
+        if (o instanceof Sized) {
+            return ((Sized) o).getSize();
+        }
+        if (o instanceof CharSequence) {
+            return 40 + 2L * ((CharSequence) o).length();
+        }
+        if (o instanceof Number || o instanceof Boolean || o instanceof Enum) {
+            return 16;
+        }
+        if (o instanceof Collection) {
+            long size = 40;
+            for (Object element : (Collection<?>) o) {
+                size += 8 + sizeOf(element);
+            }
+            return size;
+        }
+        if (o instanceof Map) {
+            long size = 48;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) o).entrySet()) {
+                size += 32 + sizeOf(entry.getKey()) + sizeOf(entry.getValue());
+            }
+            return size;
+        }
+        return 64;
+    }
+
+    /**
+     * A cached value that knows its size better than {@link GitLabCacheManager#sizeOf(Object)}.
+     */
+    public interface Sized {
+
+        /**
+         * @return the estimated memory taken by the value, in bytes
+         */
+        long getSize();
+
+    }
+
+    /**
+     * Computes a value missing from a cache.
+     */
+    public interface Loader<V, E extends Exception> {
+
+        /**
+         * @return the value, null if there is none; null isn't cached
+         */
+        V load() throws E;
+
+    }
+
+    /**
+     * A cache with its share of the budget. Entries are read and written through this class so that they
+     * are counted; the underlying map is replaced when the cache is resized.
+     */
+    public static final class NamedCache<K, V> {
+
+        private static final int ENTRY_OVERHEAD = 64;
+
+        private final String name;
+        private final int share;
+        private final long expiryMillis;
+        private final boolean sinceAccess;
+
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong evictions = new AtomicLong();
+        private final AtomicLong loads = new AtomicLong();
+        private final AtomicLong loadNanos = new AtomicLong();
+
+        private volatile Generation<K, V> generation;
+
+        NamedCache(String name, int share, long expiryMillis, boolean sinceAccess) {
+            this.name = name;
+            this.share = share;
+            this.expiryMillis = expiryMillis;
+            this.sinceAccess = sinceAccess;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getShare() {
+            return share;
+        }
+
+        public V get(K key) {
+            final V value = generation.map.get(key);
+            (value == null ? misses : hits).incrementAndGet();
+            return value;
+        }
+
+        /**
+         * @return the cached value, or the value computed by the loader, which is then cached
+         */
+        public <E extends Exception> V get(K key, Loader<V, E> loader) throws E {
+            V value = get(key);
+            if (value == null) {
+                final long start = System.nanoTime();
+                try {
+                    value = loader.load();
+                } finally {
+                    loads.incrementAndGet();
+                    loadNanos.addAndGet(System.nanoTime() - start);
+                }
+                if (value != null) {
+                    put(key, value);
+                }
+            }
+            return value;
+        }
+
+        public void put(K key, V value) {
+            generation.map.put(key, value);
+        }
+
+        public boolean replace(K key, V oldValue, V newValue) {
+            return generation.map.replace(key, oldValue, newValue);
+        }
+
+        public void remove(K key) {
+            generation.map.remove(key);
+        }
+
+        /**
+         * @return the cached keys; removing a key removes its entry
+         */
+        public Collection<K> keys() {
+            return generation.map.keySet();
+        }
+
+        public void flush() {
+            generation.map.clear();
+        }
+
+        public int size() {
+            return generation.map.size();
+        }
+
+        /**
+         * @return the estimated size of the cached entries, in bytes
+         */
+        public long getWeight() {
+            return generation.weight.get();
+        }
+
+        public long getMaxWeight() {
+            return generation.maxWeight;
+        }
+
+        public long getHits() {
+            return hits.get();
+        }
+
+        public long getMisses() {
+            return misses.get();
+        }
+
+        public long getEvictions() {
+            return evictions.get();
+        }
+
+        public long getLoads() {
+            return loads.get();
+        }
+
+        public double getAverageLoadMillis() {
+            final long count = loads.get();
+            return count == 0 ? 0 : loadNanos.get() / 1000000.0 / count;
+        }
+
+        synchronized void resize(long maxWeight) {
+            final Generation<K, V> previous = generation;
+            final Generation<K, V> next = new Generation<K, V>(this, maxWeight);
+            if (previous != null) {
+                next.map.putAll(previous.map);
+            }
+            generation = next;
+        }
+
+    }
+
+    /**
+     * The map of a cache between two resizes, with the estimated size of its entries.
+     */
+    private static final class Generation<K, V> {
+
+        private final long maxWeight;
+        private final AtomicLong weight = new AtomicLong();
+        private final ConcurrentMap<K, V> map;
+
+        Generation(final NamedCache<K, V> cache, long maxWeight) {
+            this.maxWeight = maxWeight;
+            CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
+            if (cache.expiryMillis > 0) {
+                if (cache.sinceAccess) {
+                    builder = builder.expireAfterAccess(cache.expiryMillis, TimeUnit.MILLISECONDS);
+                } else {
+                    builder = builder.expireAfterWrite(cache.expiryMillis, TimeUnit.MILLISECONDS);
+                }
+            }
+            this.map = builder
+                    .maximumWeight(maxWeight)
+                    .weigher(new Weigher<K, V>() {
+
+                        public int weigh(K key, V value) {
+                            final int size = weightOf(key, value);
+                            weight.addAndGet(size);
+                            return size;
+                        }
+
+                    })
+                    .removalListener(new RemovalListener<K, V>() {
+
+                        public void onRemoval(RemovalNotification<K, V> notification) {
+                            weight.addAndGet(-weightOf(notification.getKey(), notification.getValue()));
+                            if (notification.wasEvicted()) {
+                                cache.evictions.incrementAndGet();
+                            }
+                        }
+
+                    })
+                    .<K, V>build()
+                    .asMap();
+        }
+
+        private static int weightOf(Object key, Object value) {
+            return (int) Math.min(Integer.MAX_VALUE, NamedCache.ENTRY_OVERHEAD + sizeOf(key) + sizeOf(value));
+        }
+
+    }
+
+    @Extension
+    public static class ManagementLinkImpl extends ManagementLink {
+
+        public GitLabCacheManager getManager() {
+            return GitLabPushTrigger.getDesc().getCacheManager();
+        }
+
+        @RequirePOST
+        public HttpResponse doFlush(@QueryParameter String name) {
+            Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+            final GitLabCacheManager manager = getManager();
+            if (name == null || name.isEmpty()) {
+                manager.flush();
+            } else {
+                final NamedCache<?, ?> cache = manager.getCache(name);
+                if (cache != null) {
+                    cache.flush();
+                }
+            }
+            return HttpResponses.redirectToDot();
+        }
+
+        @Override
+        public String getIconFileName() {
+            return "package.png";
+        }
+
+        @Override
+        public String getUrlName() {
+            return "gitlab-caches";
+        }
+
+        public String getDisplayName() {
+            return "GitLab Caches";
+        }
+
+        @Override
+        public String getDescription() {
+            return "Size, hit rate and evictions of the GitLab plugin caches, which can be flushed here.";
+        }
+
+    }
+
+}
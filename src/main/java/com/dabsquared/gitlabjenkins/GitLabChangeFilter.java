@@ -0,0 +1,122 @@
+package com.dabsquared.gitlabjenkins;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.util.AntPathMatcher;
+
+import com.google.common.base.Splitter;
+
+import hudson.Util;
+
+/**
+ * Decides from the push payload whether a push is worth a build: pushes whose head commit
+ * carries a skip marker (e.g. {@code [ci skip]}) are skipped, as are pushes which only change
+ * files outside the included paths or inside the excluded ones.
+ */
+public class GitLabChangeFilter {
+
+    private static final AntPathMatcher MATCHER = new AntPathMatcher();
+
+    private final List<String> skipMarkers;
+    private final List<String> includePaths;
+    private final List<String> excludePaths;
+
+    private GitLabChangeFilter(String skipMarkersSpec, String includePathsSpec, String excludePathsSpec) {
+        this.skipMarkers = split(skipMarkersSpec);
+        this.includePaths = split(includePathsSpec);
+        this.excludePaths = split(excludePathsSpec);
+    }
+
+    public static GitLabChangeFilter compile(String skipMarkersSpec, String includePathsSpec, String excludePathsSpec) {
+        return new GitLabChangeFilter(skipMarkersSpec, includePathsSpec, excludePathsSpec);
+    }
+
+    /**
+     * @return whether the commit which would be built asks not to be built
+     */
+    public boolean isSkipped(GitLabPushRequest req) {
+        if (skipMarkers.isEmpty()) {
+            return false;
+        }
+        final GitLabPushRequest.Commit lastCommit = req.getLastCommit();
+        if (lastCommit == null || lastCommit.getMessage() == null) {
+            return false;
+        }
+        final String message = lastCommit.getMessage().toLowerCase();
+        for (String marker : skipMarkers) {
+            if (message.contains(marker.toLowerCase())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean hasPathFilter() {
+        return !includePaths.isEmpty() || !excludePaths.isEmpty();
+    }
+
+    /**
+     * @return the files changed by the push, or null when the payload doesn't list them all
+     *         (older GitLab versions, or commit lists truncated by GitLab)
+     */
+    public Set<String> getChangedPaths(GitLabPushRequest req) {
+        final List<GitLabPushRequest.Commit> commits = req.getCommits();
+        if (commits == null || commits.isEmpty()) {
+            return null;
+        }
+        if (req.getTotal_commits_count() != null && req.getTotal_commits_count() > commits.size()) {
+            return null;
+        }
+
+        final Set<String> paths = new HashSet<String>();
+        for (GitLabPushRequest.Commit commit : commits) {
+            if (commit.getAdded() == null && commit.getModified() == null && commit.getRemoved() == null) {
+                return null;
+            }
+            addAll(paths, commit.getAdded());
+            addAll(paths, commit.getModified());
+            addAll(paths, commit.getRemoved());
+        }
+        return paths;
+    }
+
+    /**
+     * @return whether any of the paths is included and not excluded
+     */
+    public boolean isRelevant(Collection<String> paths) {
+        for (String path : paths) {
+            if (!matchesAny(excludePaths, path) && (includePaths.isEmpty() || matchesAny(includePaths, path))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchesAny(List<String> patterns, String path) {
+        for (String pattern : patterns) {
+            if (MATCHER.match(pattern, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void addAll(Set<String> paths, List<String> changed) {
+        if (changed != null) {
+            paths.addAll(changed);
+        }
+    }
+
+    private static List<String> split(String spec) {
+        final List<String> result = new ArrayList<String>();
+        for (String entry : Splitter.on(',').omitEmptyStrings().trimResults().split(Util.fixNull(spec))) {
+            result.add(entry);
+        }
+        return result;
+    }
+
+}
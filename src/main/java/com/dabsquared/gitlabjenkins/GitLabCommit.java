@@ -0,0 +1,44 @@
+package com.dabsquared.gitlabjenkins;
+
+import org.codehaus.jackson.annotate.JsonIgnoreProperties;
+
+/**
+ * Single commit of the GitLab API.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class GitLabCommit {
+
+    public static final String URL = "/repository/commits";
+
+    private String id;
+    private String title;
+    private String message;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    /**
+     * @return the full commit message, the title on GitLab versions that don't return it
+     */
+    public String getMessage() {
+        return message == null ? title : message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+}
@@ -0,0 +1,272 @@
+package com.dabsquared.gitlabjenkins;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.cache.CacheBuilder;
+
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.plugins.git.util.Build;
+import hudson.plugins.git.util.BuildData;
+import hudson.plugins.git.util.MergeRecord;
+
+/**
+ * On-disk index from built commit to build number of one job, so that finding the build of a commit
+ * doesn't load every build of the job.
+ *
+ * The index is a file of fixed-width records (binary SHA, build number, flags) in build order. Completed
+ * builds are appended to it, and lookups scan the memory-mapped file from its end, so opening it
+ * involves no parsing. It is created from the existing builds the first time it is needed. Running builds
+ * aren't in the file yet; they are kept in memory and lookups check them first.
+ */
+public class GitLabCommitIndex {
+
+    static final String FILE_NAME = "gitlab-commits.idx";
+
+    private static final int SHA_SIZE = 20;
+    private static final int RECORD_SIZE = SHA_SIZE + 4 + 4;
+    private static final int MERGE_BUILD = 1;
+
+    private static final ConcurrentMap<String, GitLabCommitIndex> INDEXES = CacheBuilder.newBuilder()
+            .maximumSize(1000)
+            .<String, GitLabCommitIndex>build()
+            .asMap();
+    private static final ConcurrentMap<String, Set<AbstractBuild<?, ?>>> RUNNING = new ConcurrentHashMap<String, Set<AbstractBuild<?, ?>>>();
+
+    private final File file;
+    private MappedByteBuffer buffer;
+
+    private GitLabCommitIndex(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return the index of the given job, null if the job has no directory
+     */
+    public static GitLabCommitIndex of(AbstractProject<?, ?> project) {
+        final File dir = project.getRootDir();
+        if (dir == null) {
+            return null;
+        }
+        final String key = dir.getAbsolutePath();
+        GitLabCommitIndex index = INDEXES.get(key);
+        if (index == null) {
+            final GitLabCommitIndex created = new GitLabCommitIndex(new File(dir, FILE_NAME));
+            index = INDEXES.putIfAbsent(key, created);
+            if (index == null) {
+                index = created;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return the builds of the job that are running right now
+     */
+    public static Collection<AbstractBuild<?, ?>> getRunningBuilds(AbstractProject<?, ?> project) {
+        final Set<AbstractBuild<?, ?>> builds = project.getFullName() == null ? null : RUNNING.get(project.getFullName());
+        return builds == null ? Collections.<AbstractBuild<?, ?>>emptySet() : builds;
+    }
+
+    /**
+     * Tracks a started build of a job with a GitLab trigger, or whose index or build summaries exist. Other jobs
+     * get their running builds tracked when the index or the summaries are created on their first lookup.
+     */
+    static void onStarted(AbstractBuild<?, ?> build) {
+        final AbstractProject<?, ?> project = build.getProject();
+        final File dir = project.getRootDir();
+        if (GitLabTriggerRegistry.get(project) != null
+                || dir != null && (new File(dir, FILE_NAME).exists() || new File(dir, GitLabBuildSummary.DIR_NAME).exists())) {
+            track(build);
+        }
+    }
+
+    static void track(AbstractBuild<?, ?> build) {
+        final String key = build.getProject().getFullName();
+        Set<AbstractBuild<?, ?>> builds = RUNNING.get(key);
+        if (builds == null) {
+            final Set<AbstractBuild<?, ?>> created = Collections.newSetFromMap(new ConcurrentHashMap<AbstractBuild<?, ?>, Boolean>());
+            builds = RUNNING.putIfAbsent(key, created);
+            if (builds == null) {
+                builds = created;
+            }
+        }
+        builds.add(build);
+    }
+
+    /**
+     * Records a completed build in the index of its job, if it was created, and stops tracking it.
+     */
+    static void onCompleted(AbstractBuild<?, ?> build) throws IOException {
+        try {
+            final File dir = build.getProject().getRootDir();
+            // created with the completed builds on the first lookup
+            if (dir != null && new File(dir, FILE_NAME).exists()) {
+                of(build.getProject()).add(build);
+            }
+        } finally {
+            final Set<AbstractBuild<?, ?>> builds = RUNNING.get(build.getProject().getFullName());
+            if (builds != null) {
+                builds.remove(build);
+            }
+        }
+    }
+
+    /**
+     * Records a completed build. Builds completing before the index exists are picked up when it is created.
+     */
+    public synchronized void add(AbstractBuild<?, ?> build) throws IOException {
+        final ByteBuffer record = record(build);
+        if (record == null || !file.exists()) {
+            return;
+        }
+        final FileOutputStream out = new FileOutputStream(file, true);
+        try {
+            out.getChannel().write(record);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return numbers of the running and completed builds of the given commit, newest first
+     */
+    public List<Integer> find(AbstractProject<?, ?> project, String sha, boolean mergeBuild) throws IOException {
+        final byte[] key = decode(sha);
+        if (key == null) {
+            return Collections.emptyList();
+        }
+        final List<Integer> numbers = new ArrayList<Integer>(1);
+        for (AbstractBuild<?, ?> build : getRunningBuilds(project)) {
+            // found once it checked out the commit
+            final ByteBuffer record = record(build);
+            if (record != null && matches(record, 0, key, mergeBuild)) {
+                numbers.add(build.getNumber());
+            }
+        }
+        Collections.sort(numbers, Collections.reverseOrder());
+        final MappedByteBuffer map = map(project);
+        for (int pos = map.limit() - RECORD_SIZE; pos >= 0; pos -= RECORD_SIZE) {
+            // a build completing right now may be in both
+            if (matches(map, pos, key, mergeBuild) && !numbers.contains(map.getInt(pos + SHA_SIZE))) {
+                numbers.add(map.getInt(pos + SHA_SIZE));
+            }
+        }
+        return numbers;
+    }
+
+    private synchronized MappedByteBuffer map(AbstractProject<?, ?> project) throws IOException {
+        if (!file.exists()) {
+            create(project);
+        }
+        final long size = file.length() / RECORD_SIZE * RECORD_SIZE;
+        if (buffer == null || buffer.limit() != size) {
+            final RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } finally {
+                raf.close();
+            }
+        }
+        return buffer;
+    }
+
+    private void create(AbstractProject<?, ?> project) throws IOException {
+        final List<AbstractBuild<?, ?>> builds = new ArrayList<AbstractBuild<?, ?>>(project.getBuilds());
+        Collections.reverse(builds);
+        final List<AbstractBuild<?, ?>> building = new ArrayList<AbstractBuild<?, ?>>();
+        final File tmp = new File(file.getParentFile(), FILE_NAME + ".tmp");
+        final FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            for (AbstractBuild<?, ?> build : builds) {
+                if (build.isBuilding()) {
+                    building.add(build);
+                }
+                final ByteBuffer record = record(build);
+                if (record != null) {
+                    out.getChannel().write(record);
+                }
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Could not create " + file);
+        }
+        // builds that started or completed meanwhile were skipped by the run listener, as there was no index;
+        // a build recorded twice is found once
+        final int newest = builds.isEmpty() ? 0 : builds.get(builds.size() - 1).getNumber();
+        for (AbstractBuild<?, ?> build : project.getBuilds()) {
+            if (build.getNumber() <= newest) {
+                break;
+            }
+            building.add(build);
+        }
+        for (AbstractBuild<?, ?> build : building) {
+            if (build.isBuilding()) {
+                track(build);
+            } else {
+                add(build);
+            }
+        }
+    }
+
+    private static ByteBuffer record(AbstractBuild<?, ?> build) {
+        final BuildData data = build.getAction(BuildData.class);
+        final Build b = data == null ? null : data.lastBuild;
+        if (b == null || b.getMarked() == null) {
+            return null;
+        }
+        final String sha = b.getMarked().getSha1String();
+        final byte[] key = decode(sha);
+        if (key == null) {
+            return null;
+        }
+        final MergeRecord merge = build.getAction(MergeRecord.class);
+        final boolean mergeBuild = merge != null && !merge.getSha1().equals(sha);
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.put(key).putInt(build.getNumber()).putInt(mergeBuild ? MERGE_BUILD : 0);
+        record.flip();
+        return record;
+    }
+
+    private static boolean matches(ByteBuffer records, int pos, byte[] key, boolean mergeBuild) {
+        for (int i = 0; i < SHA_SIZE; i++) {
+            if (records.get(pos + i) != key[i]) {
+                return false;
+            }
+        }
+        return ((records.getInt(pos + SHA_SIZE + 4) & MERGE_BUILD) != 0) == mergeBuild;
+    }
+
+    private static byte[] decode(String sha) {
+        if (sha == null || sha.length() != SHA_SIZE * 2) {
+            return null;
+        }
+        final byte[] bytes = new byte[SHA_SIZE];
+        for (int i = 0; i < SHA_SIZE; i++) {
+            final int hi = Character.digit(sha.charAt(2 * i), 16);
+            final int lo = Character.digit(sha.charAt(2 * i + 1), 16);
+            if (hi < 0 || lo < 0) {
+                return null;
+            }
+            bytes[i] = (byte) (hi << 4 | lo);
+        }
+        return bytes;
+    }
+
+}
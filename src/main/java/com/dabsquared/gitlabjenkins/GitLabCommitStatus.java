@@ -0,0 +1,39 @@
+package com.dabsquared.gitlabjenkins;
+
+import org.codehaus.jackson.annotate.JsonIgnoreProperties;
+
+/**
+ * Build state of a commit as accepted by the GitLab commit status API.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class GitLabCommitStatus {
+
+    public static final String URL = "/statuses";
+
+    public static final String PENDING = "pending";
+    public static final String RUNNING = "running";
+    public static final String SUCCESS = "success";
+    public static final String FAILED = "failed";
+    public static final String CANCELED = "canceled";
+
+    private Integer id;
+
+    private String status;
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+}
@@ -0,0 +1,134 @@
+package com.dabsquared.gitlabjenkins;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.util.DaemonThreadFactory;
+
+/**
+ * Outbound queue of commit status updates for GitLab.
+ *
+ * Updates are keyed by project, commit and job and sent shortly after being submitted; an update
+ * replaced before it was sent (e.g. pending followed by running) costs no API call.
+ */
+public class GitLabCommitStatusPublisher {
+
+    private static final Logger LOGGER = Logger.getLogger(GitLabCommitStatusPublisher.class.getName());
+
+    private static final long COALESCE_MILLIS = Long.getLong(GitLabCommitStatusPublisher.class.getName() + ".coalesceMillis", 500L);
+    private static final int MAX_ATTEMPTS = 3;
+
+    private static final GitLabCommitStatusPublisher INSTANCE = new GitLabCommitStatusPublisher();
+
+    private final ConcurrentMap<String, Update> updates = new ConcurrentHashMap<String, Update>();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory());
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private final Runnable drain = new Runnable() {
+
+        public void run() {
+            drain();
+        }
+
+    };
+
+    public static GitLabCommitStatusPublisher get() {
+        return INSTANCE;
+    }
+
+    public void publish(GitLabConnection connection, Integer projectId, String commit, String ref, String state, String name, String targetUrl,
+                        String description) {
+        if (projectId == null || commit == null) {
+            return;
+        }
+        final Update update = new Update(connection, projectId, commit, ref, state, name, targetUrl, description);
+        if (updates.put(update.getKey(), update) != null) {
+            coalesced.incrementAndGet();
+        }
+        schedule();
+    }
+
+    public long getSentCount() {
+        return sent.get();
+    }
+
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            executor.schedule(drain, COALESCE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void drain() {
+        scheduled.set(false);
+        for (String key : updates.keySet()) {
+            final Update update = updates.remove(key);
+            if (update == null) {
+                continue;
+            }
+            try {
+                update.connection.getClient().createCommitStatus(update.projectId, update.commit, update.ref, update.state,
+                                                                          update.name, update.targetUrl, update.description);
+                sent.incrementAndGet();
+            } catch (IOException e) {
+                if (++update.attempts < MAX_ATTEMPTS) {
+                    // retry unless a newer state was submitted meanwhile
+                    updates.putIfAbsent(key, update);
+                    schedule();
+                } else {
+                    failed.incrementAndGet();
+                    LOGGER.log(Level.WARNING, "Could not set {0} status of commit {1} on GitLab: {2}", new Object[] { update.state, update.commit, e.getMessage() });
+                }
+            }
+        }
+    }
+
+    private static final class Update {
+
+        private final GitLabConnection connection;
+        private final Integer projectId;
+        private final String commit;
+        private final String ref;
+        private final String state;
+        private final String name;
+        private final String targetUrl;
+        private final String description;
+        private int attempts;
+
+        private Update(GitLabConnection connection, Integer projectId, String commit, String ref, String state, String name, String targetUrl,
+                       String description) {
+            this.connection = connection;
+            this.projectId = projectId;
+            this.commit = commit;
+            this.ref = ref;
+            this.state = state;
+            this.name = name;
+            this.targetUrl = targetUrl;
+            this.description = description;
+        }
+
+        private String getKey() {
+            return connection.getName() + ":" + projectId + ":" + commit + ":" + name;
+        }
+
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.dabsquared.gitlabjenkins;
+
+import java.util.List;
+
+import org.codehaus.jackson.annotate.JsonIgnoreProperties;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+/**
+ * Result of the GitLab repository compare API, reduced to the changed files.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class GitLabCompare {
+
+    public static final String URL = "/repository/compare";
+
+    private List<Diff> diffs;
+
+    public List<Diff> getDiffs() {
+        return diffs;
+    }
+
+    public void setDiffs(List<Diff> diffs) {
+        this.diffs = diffs;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Diff {
+
+        @JsonProperty("old_path")
+        private String oldPath;
+
+        @JsonProperty("new_path")
+        private String newPath;
+
+        public String getOldPath() {
+            return oldPath;
+        }
+
+        public void setOldPath(String oldPath) {
+            this.oldPath = oldPath;
+        }
+
+        public String getNewPath() {
+            return newPath;
+        }
+
+        public void setNewPath(String newPath) {
+            this.newPath = newPath;
+        }
+
+    }
+
+}
@@ -0,0 +1,164 @@
+package com.dabsquared.gitlabjenkins;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.util.FormValidation;
+
+/**
+ * A GitLab server the plugin talks to, selected by name in the trigger configuration.
+ *
+ * Each connection has its own API client, call guard and caches, so that one busy or failing server
+ * does not hold back calls to another.
+ */
+public class GitLabConnection extends AbstractDescribableImpl<GitLabConnection> {
+
+    private static final Logger LOGGER = Logger.getLogger(GitLabConnection.class.getName());
+
+    // shared by all connections, keys start with the connection name
+    private static final GitLabCacheManager.NamedCache<String, Set<String>> CHANGED_PATHS = GitLabCacheManager.get()
+            .register("changed-paths", 2, 1, TimeUnit.HOURS, true);
+
+    private final String name;
+    private final String url;
+    private final String apiToken;
+    private final boolean ignoreCertificateErrors;
+
+    private transient GitLab client;
+    private transient GitLabApiGuard guard;
+    private transient GitLabBranchCache branchCache;
+
+    @DataBoundConstructor
+    public GitLabConnection(String name, String url, String apiToken, boolean ignoreCertificateErrors) {
+        this.name = name;
+        this.url = url;
+        this.apiToken = apiToken;
+        this.ignoreCertificateErrors = ignoreCertificateErrors;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getApiToken() {
+        return apiToken;
+    }
+
+    public boolean getIgnoreCertificateErrors() {
+        return ignoreCertificateErrors;
+    }
+
+    public synchronized GitLab getClient() {
+        if (client == null) {
+            client = new GitLab(this);
+        }
+        return client;
+    }
+
+    public synchronized GitLabApiGuard getGuard() {
+        if (guard == null) {
+            guard = new GitLabApiGuard(name);
+        }
+        return guard;
+    }
+
+    public synchronized GitLabBranchCache getBranchCache() {
+        if (branchCache == null) {
+            branchCache = new GitLabBranchCache(name);
+        }
+        return branchCache;
+    }
+
+    /**
+     * Get the files changed between two commits, as reported by GitLab's compare API.
+     * A pair of commits always yields the same changes, so the result is cached.
+     *
+     * @return the changed paths, or null if they cannot be determined
+     */
+    public Set<String> getChangedPaths(final Integer projectId, final String from, final String to) {
+        if (projectId == null || from == null || to == null || GitLabPushType.NO_COMMIT.equals(from)) {
+            return null;
+        }
+
+        try {
+            return CHANGED_PATHS.get(name + ":" + projectId + ":" + from + ":" + to, new GitLabCacheManager.Loader<Set<String>, IOException>() {
+
+                public Set<String> load() throws IOException {
+                    final GitLabCompare compare = getClient().compare(projectId, from, to);
+                    final Set<String> paths = new HashSet<String>();
+                    if (compare.getDiffs() != null) {
+                        for (GitLabCompare.Diff diff : compare.getDiffs()) {
+                            paths.add(diff.getOldPath());
+                            paths.add(diff.getNewPath());
+                        }
+                    }
+                    paths.remove(null);
+                    return paths;
+                }
+
+            });
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not fetch changes between {0} and {1} from {2}: {3}", new Object[] { from, to, name, e.getMessage() });
+            return null;
+        }
+    }
+
+    @Extension
+    public static class DescriptorImpl extends Descriptor<GitLabConnection> {
+
+        @Override
+        public String getDisplayName() {
+            return "GitLab connection";
+        }
+
+        public FormValidation doCheckName(@QueryParameter String value) {
+            if (value == null || value.isEmpty()) {
+                return FormValidation.error("Connection name required.");
+            }
+
+            return FormValidation.ok();
+        }
+
+        public FormValidation doCheckUrl(@QueryParameter String value) {
+            if (value == null || value.isEmpty()) {
+                return FormValidation.error("Gitlab host URL required.");
+            }
+
+            return FormValidation.ok();
+        }
+
+        public FormValidation doCheckApiToken(@QueryParameter String value) {
+            if (value == null || value.isEmpty()) {
+                return FormValidation.error("API Token for Gitlab access required");
+            }
+
+            return FormValidation.ok();
+        }
+
+        public FormValidation doTestConnection(@QueryParameter("url") final String url, @QueryParameter("apiToken") final String apiToken,
+                                               @QueryParameter("ignoreCertificateErrors") final boolean ignoreCertificateErrors) {
+            try {
+                GitLab.checkConnection(apiToken, url, ignoreCertificateErrors);
+                return FormValidation.ok("Success");
+            } catch (IOException e) {
+                return FormValidation.error("Client error : " + e.getMessage());
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,116 @@
+package com.dabsquared.gitlabjenkins;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.cache.CacheBuilder;
+
+import net.sf.json.JSONObject;
+
+/**
+ * Remembers recently accepted webhook events so that hooks redelivered by GitLab
+ * (e.g. after a timeout) are dropped before they are bound and dispatched to a trigger.
+ *
+ * Events are identified by project id, ref and before/after SHA for pushes, and by
+ * merge request id, last commit SHA and action for merge requests.
+ */
+public class GitLabEventDeduplicator {
+
+    private static final Logger LOGGER = Logger.getLogger(GitLabEventDeduplicator.class.getName());
+
+    private static final int MAX_EVENTS = Integer.getInteger(GitLabEventDeduplicator.class.getName() + ".maxEvents", 10000);
+    private static final long EXPIRY_MINUTES = Long.getLong(GitLabEventDeduplicator.class.getName() + ".expiryMinutes", 30L);
+
+    private static final GitLabEventDeduplicator INSTANCE = new GitLabEventDeduplicator(MAX_EVENTS, EXPIRY_MINUTES, TimeUnit.MINUTES);
+
+    private final ConcurrentMap<String, Boolean> seen;
+    private final AtomicLong droppedPushes = new AtomicLong();
+    private final AtomicLong droppedMergeRequests = new AtomicLong();
+
+    GitLabEventDeduplicator(int maxEvents, long expiry, TimeUnit unit) {
+        this.seen = CacheBuilder.newBuilder()
+                .maximumSize(maxEvents)
+                .expireAfterWrite(expiry, unit)
+                .<String, Boolean>build()
+                .asMap();
+    }
+
+    public static GitLabEventDeduplicator get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Records the event and tells whether it was already seen for the given job.
+     *
+     * @param jobName full name of the job the hook was delivered to
+     * @param json the raw webhook payload
+     * @return true if the same event has already been accepted for this job
+     */
+    public boolean isDuplicate(String jobName, JSONObject json) {
+        final boolean mergeRequest = isMergeRequest(json);
+        final String key = keyOf(jobName, json);
+        if (key == null) {
+            return false;
+        }
+        if (seen.putIfAbsent(key, Boolean.TRUE) == null) {
+            return false;
+        }
+
+        final long dropped = (mergeRequest ? droppedMergeRequests : droppedPushes).incrementAndGet();
+        GitLabWebHookDiagnostics.note(LOGGER, Level.INFO, "Dropping redelivered GitLab event {0} ({1} duplicates dropped so far)", key, dropped);
+        return true;
+    }
+
+    /**
+     * Forgets an event recorded by {@link #isDuplicate(String, JSONObject)} whose dispatch failed,
+     * so that GitLab's redelivery of it is accepted.
+     */
+    public void forget(String jobName, JSONObject json) {
+        final String key = keyOf(jobName, json);
+        if (key != null) {
+            seen.remove(key);
+        }
+    }
+
+    public long getDroppedPushCount() {
+        return droppedPushes.get();
+    }
+
+    public long getDroppedMergeRequestCount() {
+        return droppedMergeRequests.get();
+    }
+
+    public int getTrackedEventCount() {
+        return seen.size();
+    }
+
+    private static boolean isMergeRequest(JSONObject json) {
+        return "merge_request".equals(json.optString("object_kind"));
+    }
+
+    private static String keyOf(String jobName, JSONObject json) {
+        return isMergeRequest(json) ? mergeRequestKey(jobName, json) : pushKey(jobName, json);
+    }
+
+    private static String pushKey(String jobName, JSONObject json) {
+        final String after = json.optString("after", null);
+        if (after == null) {
+            return null;
+        }
+        return "push|" + jobName + '|' + json.optString("project_id") + '|' + json.optString("ref") + '|' + json.optString("before") + '|' + after;
+    }
+
+    private static String mergeRequestKey(String jobName, JSONObject json) {
+        final JSONObject attributes = json.optJSONObject("object_attributes");
+        if (attributes == null || attributes.isNullObject()) {
+            return null;
+        }
+        final JSONObject lastCommit = attributes.optJSONObject("last_commit");
+        final String lastCommitId = lastCommit == null || lastCommit.isNullObject() ? "" : lastCommit.optString("id");
+        return "mr|" + jobName + '|' + attributes.optString("id") + '|' + lastCommitId + '|' + attributes.optString("action");
+    }
+
+}
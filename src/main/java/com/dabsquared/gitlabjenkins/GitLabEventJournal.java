@@ -0,0 +1,429 @@
+package com.dabsquared.gitlabjenkins;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.AbstractProject;
+import hudson.security.ACL;
+
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+
+/**
+ * Append-only journal of accepted webhook events, so that events whose build was never scheduled
+ * (controller restart, failing queue runnable) are replayed on startup instead of being lost.
+ *
+ * Appends only write to the OS page cache; a background flusher syncs to disk in batches (group commit),
+ * so an entry survives a controller crash right away and a machine crash once the next batch is synced.
+ * Entries are checkpointed once the trigger scheduled their build. The journal is split into segments;
+ * as a segment may hold the checkpoints of entries written to older ones, segments are only deleted oldest
+ * first once they have no pending entries, and pending entries of old segments are carried forward.
+ */
+public class GitLabEventJournal {
+
+    private static final Logger LOGGER = Logger.getLogger(GitLabEventJournal.class.getName());
+
+    private static final boolean DISABLED = Boolean.getBoolean(GitLabEventJournal.class.getName() + ".disabled");
+    private static final long SEGMENT_SIZE = Long.getLong(GitLabEventJournal.class.getName() + ".segmentSize", 4L * 1024 * 1024);
+    private static final long FLUSH_INTERVAL_MILLIS = Long.getLong(GitLabEventJournal.class.getName() + ".flushIntervalMillis", 20L);
+    private static final int MAX_SEGMENTS = 4;
+    private static final int MAX_ATTEMPTS = 3;
+
+    private static final byte ACCEPTED = 1;
+    private static final byte CHECKPOINT = 2;
+    private static final String SEGMENT_PREFIX = "events-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static GitLabEventJournal instance;
+
+    private final File directory;
+    private final long segmentSize;
+    /** Entries not checkpointed yet, in append order. */
+    private final Map<Long, Entry> pending = new LinkedHashMap<Long, Entry>();
+    /** Closed segments, oldest first, with the number of their pending entries. */
+    private final Map<File, Integer> closedSegments = new LinkedHashMap<File, Integer>();
+    private long nextSequence = 1;
+    private long segmentNumber;
+    private File segment;
+    private FileChannel channel;
+    private volatile boolean dirty;
+
+    GitLabEventJournal(File directory) {
+        this(directory, SEGMENT_SIZE);
+    }
+
+    GitLabEventJournal(File directory, long segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * @return the journal of this controller, or null if it is disabled or couldn't be opened
+     */
+    public static synchronized GitLabEventJournal get() {
+        return instance;
+    }
+
+    /**
+     * Records an accepted event.
+     *
+     * @return the sequence number to checkpoint once the event is handled, 0 if it couldn't be recorded
+     */
+    public long append(String jobName, GitLabRequest request) {
+        return append(jobName, request, 1);
+    }
+
+    /**
+     * Marks the event as handled, it won't be replayed anymore.
+     */
+    public synchronized void checkpoint(long sequence) {
+        final Entry entry = pending.remove(sequence);
+        if (entry == null) {
+            return;
+        }
+        // a segment closed by the write below is counted without this entry already
+        final boolean closed = entry.segment != null && closedSegments.containsKey(entry.segment);
+        try {
+            write(encode(CHECKPOINT, sequence, (byte) 0, null));
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not checkpoint GitLab event " + sequence, e);
+        }
+        if (closed) {
+            release(entry.segment);
+        }
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    private long append(String jobName, GitLabRequest request, int attempts) {
+        final String kind = request instanceof GitLabMergeRequest ? GitLabMergeRequest.KIND : GitLabPushRequest.KIND;
+        final byte[] payload = (kind + '\n' + jobName + '\n' + request.toJson()).getBytes(UTF_8);
+        synchronized (this) {
+            final long sequence = nextSequence++;
+            // registered before writing, so that a rotation by the write counts it in the segment it was written to
+            final Entry entry = new Entry(segment, payload, attempts);
+            pending.put(sequence, entry);
+            try {
+                write(encode(ACCEPTED, sequence, (byte) attempts, payload));
+                return sequence;
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not journal GitLab event for " + jobName, e);
+                pending.remove(sequence);
+                if (closedSegments.containsKey(entry.segment)) {
+                    release(entry.segment);
+                }
+                return 0;
+            }
+        }
+    }
+
+    private void write(ByteBuffer record) throws IOException {
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        dirty = true;
+        if (channel.position() >= segmentSize) {
+            rotate();
+        }
+    }
+
+    private void flush() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        try {
+            final FileChannel current;
+            synchronized (this) {
+                current = channel;
+            }
+            current.force(false);
+        } catch (ClosedChannelException e) {
+            // rotated meanwhile, the closed segment was synced before closing it
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not sync GitLab event journal", e);
+        }
+    }
+
+    private void rotate() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+            int live = 0;
+            for (Entry entry : pending.values()) {
+                if (segment.equals(entry.segment)) {
+                    live++;
+                }
+            }
+            closedSegments.put(segment, live);
+            prune();
+        }
+        segment = new File(directory, String.format("%s%016x%s", SEGMENT_PREFIX, ++segmentNumber, SEGMENT_SUFFIX));
+        channel = new RandomAccessFile(segment, "rw").getChannel();
+        channel.position(channel.size());
+        compact();
+    }
+
+    /**
+     * Carries pending entries of the oldest segments forward, so that a few stuck entries
+     * cannot keep the journal growing.
+     */
+    private void compact() throws IOException {
+        while (closedSegments.size() > MAX_SEGMENTS) {
+            final File oldest = closedSegments.keySet().iterator().next();
+            final List<Long> carried = new ArrayList<Long>();
+            for (Map.Entry<Long, Entry> e : pending.entrySet()) {
+                if (oldest.equals(e.getValue().segment)) {
+                    carried.add(e.getKey());
+                }
+            }
+            for (Long sequence : carried) {
+                final Entry entry = pending.get(sequence);
+                final ByteBuffer record = encode(ACCEPTED, sequence, (byte) entry.attempts, entry.payload);
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+                entry.segment = segment;
+            }
+            closedSegments.put(oldest, 0);
+            prune();
+        }
+    }
+
+    private void release(File file) {
+        final Integer live = closedSegments.get(file);
+        if (live == null) {
+            return;
+        }
+        closedSegments.put(file, live - 1);
+        if (live == 1) {
+            prune();
+        }
+    }
+
+    /**
+     * Deletes the oldest segments without pending entries. A newer empty segment is kept while an older one
+     * is live, its checkpoints would be lost and the entries they checkpoint replayed.
+     */
+    private void prune() {
+        final Iterator<Map.Entry<File, Integer>> it = closedSegments.entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<File, Integer> e = it.next();
+            if (e.getValue() > 0) {
+                return;
+            }
+            it.remove();
+            if (!e.getKey().delete()) {
+                LOGGER.log(Level.WARNING, "Could not delete GitLab event journal segment {0}", e.getKey());
+            }
+        }
+    }
+
+    private static ByteBuffer encode(byte type, long sequence, byte attempts, byte[] payload) {
+        final int bodyLength = 1 + 8 + 1 + (payload == null ? 0 : payload.length);
+        final ByteBuffer buffer = ByteBuffer.allocate(4 + 8 + bodyLength);
+        buffer.putInt(bodyLength);
+        buffer.position(12);
+        buffer.put(type).putLong(sequence).put(attempts);
+        if (payload != null) {
+            buffer.put(payload);
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 12, bodyLength);
+        buffer.putLong(4, crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Reads all segments and returns the entries that were never checkpointed, oldest first.
+     */
+    Map<Long, Entry> recover() throws IOException {
+        final Map<Long, Entry> entries = new LinkedHashMap<Long, Entry>();
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return entries;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            final String name = file.getName();
+            if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+                continue;
+            }
+            try {
+                segmentNumber = Math.max(segmentNumber, Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()), 16));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                while (true) {
+                    final int length = in.readInt();
+                    final long checksum = in.readLong();
+                    if (length < 10 || length > Math.max(segmentSize, SEGMENT_SIZE) * 2) {
+                        break;
+                    }
+                    final byte[] body = new byte[length];
+                    in.readFully(body);
+                    final CRC32 crc = new CRC32();
+                    crc.update(body);
+                    if (crc.getValue() != checksum) {
+                        LOGGER.log(Level.WARNING, "Torn record at the end of GitLab event journal segment {0}, ignoring the rest of it", file);
+                        break;
+                    }
+                    final ByteBuffer record = ByteBuffer.wrap(body);
+                    final byte type = record.get();
+                    final long sequence = record.getLong();
+                    final byte attempts = record.get();
+                    nextSequence = Math.max(nextSequence, sequence + 1);
+                    if (type == ACCEPTED) {
+                        entries.put(sequence, new Entry(file, Arrays.copyOfRange(body, 10, body.length), attempts));
+                    } else if (type == CHECKPOINT) {
+                        entries.remove(sequence);
+                    }
+                }
+            } catch (EOFException e) {
+                // end of segment, possibly a torn write
+            } finally {
+                in.close();
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Opens the journal, carries the pending entries over into a new segment and returns them.
+     */
+    synchronized Map<Long, Entry> open() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        final Map<Long, Entry> recovered = recover();
+        final File[] old = directory.listFiles();
+        rotate();
+        final Map<Long, Entry> replay = new LinkedHashMap<Long, Entry>();
+        for (Entry entry : recovered.values()) {
+            if (entry.attempts >= MAX_ATTEMPTS) {
+                LOGGER.log(Level.SEVERE, "Giving up on GitLab event after {0} attempts: {1}", new Object[] { entry.attempts, entry.getPayload() });
+                continue;
+            }
+            final long sequence = nextSequence++;
+            final Entry carried = new Entry(segment, entry.payload, entry.attempts + 1);
+            pending.put(sequence, carried);
+            replay.put(sequence, carried);
+            write(encode(ACCEPTED, sequence, (byte) carried.attempts, carried.payload));
+        }
+        channel.force(false);
+        if (old != null) {
+            for (File file : old) {
+                if (!file.equals(segment) && file.getName().startsWith(SEGMENT_PREFIX) && !file.delete()) {
+                    LOGGER.log(Level.WARNING, "Could not delete GitLab event journal segment {0}", file);
+                }
+            }
+        }
+        return replay;
+    }
+
+    private void replay(Map<Long, Entry> entries) {
+        for (final Map.Entry<Long, Entry> e : entries.entrySet()) {
+            final String[] parts = e.getValue().getPayload().split("\n", 3);
+            final long sequence = e.getKey();
+            if (parts.length < 3) {
+                checkpoint(sequence);
+                continue;
+            }
+            ACL.impersonate(ACL.SYSTEM, new Runnable() {
+
+                public void run() {
+                    final AbstractProject<?, ?> project = Jenkins.getInstance().getItemByFullName(parts[1], AbstractProject.class);
+                    final GitLabPushTrigger trigger = project == null ? null : project.getTrigger(GitLabPushTrigger.class);
+                    if (trigger == null) {
+                        LOGGER.log(Level.INFO, "Dropping journaled GitLab event for {0}, the job has no GitLab trigger anymore", parts[1]);
+                        checkpoint(sequence);
+                        return;
+                    }
+                    LOGGER.log(Level.INFO, "Replaying GitLab {0} event for {1} that was accepted but never scheduled", new Object[] { parts[0], parts[1] });
+                    if (GitLabMergeRequest.KIND.equals(parts[0])) {
+                        final GitLabMergeRequest request = GitLabMergeRequest.create(parts[2]);
+                        request.setJournalEntry(sequence);
+                        trigger.onPost(request);
+                    } else {
+                        final GitLabPushRequest request = GitLabPushRequest.create(parts[2]);
+                        request.setJournalEntry(sequence);
+                        trigger.onPost(request);
+                    }
+                }
+
+            });
+        }
+    }
+
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void init() {
+        if (DISABLED) {
+            return;
+        }
+        final GitLabEventJournal journal = new GitLabEventJournal(new File(Jenkins.getInstance().getRootDir(), "gitlab-plugin/journal"));
+        final Map<Long, Entry> entries;
+        try {
+            entries = journal.open();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Could not open the GitLab event journal, accepted events won't survive a restart", e);
+            return;
+        }
+        synchronized (GitLabEventJournal.class) {
+            instance = journal;
+        }
+        Timer.get().scheduleWithFixedDelay(new Runnable() {
+
+            public void run() {
+                journal.flush();
+            }
+
+        }, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        journal.replay(entries);
+    }
+
+    static final class Entry {
+
+        private File segment;
+        private final byte[] payload;
+        private final int attempts;
+
+        Entry(File segment, byte[] payload, int attempts) {
+            this.segment = segment;
+            this.payload = payload;
+            this.attempts = attempts;
+        }
+
+        String getPayload() {
+            return new String(payload, UTF_8);
+        }
+
+    }
+
+}
@@ -14,6 +14,8 @@ import org.gitlab.api.models.GitlabProject;
  */
 public class GitLabMergeRequest extends GitLabRequest {
 
+    public static final String KIND = "merge_request";
+
     public static GitLabMergeRequest create(String payload) {
         if (payload == null) {
             throw new IllegalArgumentException("payload should not be null");
@@ -30,14 +32,26 @@ public class GitLabMergeRequest extends GitLabRequest {
 
     private ObjectAttributes objectAttributes;
     private GitlabProject sourceProject = null;
+    private transient org.gitlab.api.models.GitlabMergeRequest details;
 
     public GitlabProject getSourceProject(GitLab api) throws IOException {
         if (sourceProject == null) {
-            sourceProject = api.instance().getProject(objectAttributes.sourceProjectId);
+            sourceProject = api.getProject(objectAttributes.sourceProjectId);
         }
         return sourceProject;
     }
 
+    /**
+     * @return the merge request as fetched from GitLab when the event was accepted, null if not fetched
+     */
+    public org.gitlab.api.models.GitlabMergeRequest getDetails() {
+        return details;
+    }
+
+    public void setDetails(org.gitlab.api.models.GitlabMergeRequest details) {
+        this.details = details;
+    }
+
     public String getObject_kind() {
         return object_kind;
     }
@@ -0,0 +1,142 @@
+package com.dabsquared.gitlabjenkins;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.gitlab.api.models.GitlabMergeRequest;
+import org.gitlab.api.models.GitlabProject;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+/**
+ * Fetches what a merge request build needs from GitLab (source project, target project and the merge
+ * request itself) in parallel, as soon as the event is accepted.
+ *
+ * The results are collected against a common deadline; a lookup that hasn't answered by then is
+ * given up on and the build is scheduled with the defaults instead.
+ */
+public class GitLabMergeRequestEnricher {
+
+    private static final Logger LOGGER = Logger.getLogger(GitLabMergeRequestEnricher.class.getName());
+
+    private static final String PREFIX = GitLabMergeRequestEnricher.class.getName();
+    private static final long DEADLINE_MILLIS = Long.getLong(PREFIX + ".deadlineMillis", 3000L);
+    private static final int THREADS = Integer.getInteger(PREFIX + ".threads", 8);
+
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(256),
+            new NamingThreadFactory(new DaemonThreadFactory(), "GitLab merge request enrichment"));
+
+    static {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Starts the lookups for the given merge request. The merge request itself is only fetched if
+     * the event doesn't carry its details already.
+     */
+    public static Enrichment start(final GitLabConnection connection, final GitLabMergeRequest req) {
+        final GitLabMergeRequest.ObjectAttributes attributes = req.getObjectAttribute();
+        final Future<GitlabProject> sourceProject = submit(new Callable<GitlabProject>() {
+
+            public GitlabProject call() throws Exception {
+                return req.getSourceProject(connection.getClient());
+            }
+
+        });
+        final Future<GitlabProject> targetProject = submit(new Callable<GitlabProject>() {
+
+            public GitlabProject call() throws Exception {
+                return connection.getClient().getProject(attributes.getTargetProjectId());
+            }
+
+        });
+        final Future<GitlabMergeRequest> mergeRequest = req.getDetails() != null ? null : submit(new Callable<GitlabMergeRequest>() {
+
+            public GitlabMergeRequest call() throws Exception {
+                final GitlabProject project = new GitlabProject();
+                project.setId(attributes.getTargetProjectId());
+                return connection.getClient().getMergeRequest(project, attributes.getId());
+            }
+
+        });
+        return new Enrichment(System.currentTimeMillis() + DEADLINE_MILLIS, sourceProject, targetProject, mergeRequest);
+    }
+
+    private static <T> Future<T> submit(Callable<T> lookup) {
+        try {
+            return EXECUTOR.submit(lookup);
+        } catch (RejectedExecutionException e) {
+            LOGGER.log(Level.FINE, "Too many merge request lookups pending, skipping one");
+            return null;
+        }
+    }
+
+    /**
+     * The lookups of one merge request event.
+     */
+    public static final class Enrichment {
+
+        private final long deadline;
+        private final Future<GitlabProject> sourceProject;
+        private final Future<GitlabProject> targetProject;
+        private final Future<GitlabMergeRequest> mergeRequest;
+
+        private Enrichment(long deadline, Future<GitlabProject> sourceProject, Future<GitlabProject> targetProject,
+                           Future<GitlabMergeRequest> mergeRequest) {
+            this.deadline = deadline;
+            this.sourceProject = sourceProject;
+            this.targetProject = targetProject;
+            this.mergeRequest = mergeRequest;
+        }
+
+        /**
+         * @return the source project, or null if it didn't arrive by the deadline
+         */
+        public GitlabProject getSourceProject() {
+            return get(sourceProject, "source project");
+        }
+
+        /**
+         * @return the target project, or null if it didn't arrive by the deadline
+         */
+        public GitlabProject getTargetProject() {
+            return get(targetProject, "target project");
+        }
+
+        /**
+         * @return the merge request as GitLab sees it, or null if it didn't arrive by the deadline
+         */
+        public GitlabMergeRequest getMergeRequest() {
+            return get(mergeRequest, "merge request");
+        }
+
+        private <T> T get(Future<T> future, String what) {
+            if (future == null) {
+                return null;
+            }
+            try {
+                return future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                LOGGER.log(Level.INFO, "GitLab didn''t return the {0} in time, using defaults", what);
+            } catch (ExecutionException e) {
+                LOGGER.log(Level.WARNING, "Could not fetch the {0} from GitLab: {1}", new Object[] { what, e.getCause().getMessage() });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,244 @@
+package com.dabsquared.gitlabjenkins;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+import org.gitlab.api.models.GitlabMergeRequest;
+import org.gitlab.api.models.GitlabNote;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONException;
+import net.sf.json.JSONObject;
+
+import hudson.model.AbstractBuild;
+import hudson.model.Result;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import jenkins.model.Jenkins;
+
+/**
+ * Keeps one note per merge request and job, edited in place with the latest result and the recent builds,
+ * instead of adding a note for every build.
+ *
+ * The note ids and build history are kept per merge request in the job's {@code gitlab-mr-notes.json}.
+ * Results of builds finishing close together are sent as a single edit.
+ */
+public class GitLabMergeRequestNotes {
+
+    private static final Logger LOGGER = Logger.getLogger(GitLabMergeRequestNotes.class.getName());
+
+    static final String FILE_NAME = "gitlab-mr-notes.json";
+
+    private static final long COALESCE_MILLIS = Long.getLong(GitLabMergeRequestNotes.class.getName() + ".coalesceMillis", 2000L);
+    private static final int HISTORY = 10;
+    private static final int MAX_MERGE_REQUESTS = 200;
+
+    private static final GitLabMergeRequestNotes INSTANCE = new GitLabMergeRequestNotes();
+
+    private final ConcurrentMap<String, Pending> pending = new ConcurrentHashMap<String, Pending>();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            new NamingThreadFactory(new DaemonThreadFactory(), "GitLab merge request notes"));
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private final Runnable drain = new Runnable() {
+
+        public void run() {
+            drain();
+        }
+
+    };
+
+    public static GitLabMergeRequestNotes get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Adds the completed build to the note of the merge request.
+     */
+    public void post(GitLabConnection connection, GitlabMergeRequest mergeRequest, AbstractBuild<?, ?> build) {
+        final File dir = build.getProject().getRootDir();
+        if (dir == null) {
+            return;
+        }
+        final Row row = new Row(build);
+        final String key = connection.getName() + ":" + mergeRequest.getProjectId() + ":" + mergeRequest.getId() + ":" + dir;
+        synchronized (this) {
+            Pending p = pending.get(key);
+            if (p == null) {
+                p = new Pending(connection, mergeRequest, new File(dir, FILE_NAME));
+                pending.put(key, p);
+            }
+            p.rows.add(row);
+        }
+        if (scheduled.compareAndSet(false, true)) {
+            executor.schedule(drain, COALESCE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void drain() {
+        scheduled.set(false);
+        for (String key : pending.keySet()) {
+            final Pending p;
+            synchronized (this) {
+                p = pending.remove(key);
+            }
+            if (p == null) {
+                continue;
+            }
+            try {
+                update(p);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not update the note of merge request !{0}: {1}", new Object[] { String.valueOf(p.mergeRequest.getIid()), e.getMessage() });
+            } catch (RuntimeException e) {
+                // the other merge requests still get their notes
+                LOGGER.log(Level.WARNING, "Could not update the note of merge request !" + p.mergeRequest.getIid(), e);
+            }
+        }
+    }
+
+    private void update(Pending p) throws IOException {
+        final JSONObject notes = read(p.file);
+        final String iid = String.valueOf(p.mergeRequest.getIid());
+        final JSONObject note = notes.has(iid) ? notes.getJSONObject(iid) : new JSONObject();
+
+        final List<Row> history = new ArrayList<Row>();
+        for (Object row : note.optJSONArray("history") == null ? new JSONArray() : note.getJSONArray("history")) {
+            history.add(new Row((JSONObject) row));
+        }
+        history.addAll(p.rows);
+        while (history.size() > HISTORY) {
+            history.remove(0);
+        }
+
+        final String body = render(history);
+        final GitLab client = p.connection.getClient();
+        GitlabNote created = null;
+        if (note.has("noteId")) {
+            try {
+                client.updateNote(p.mergeRequest, note.getInt("noteId"), body);
+            } catch (FileNotFoundException e) {
+                // deleted on GitLab
+                created = client.createNote(p.mergeRequest, body);
+            }
+        } else {
+            created = client.createNote(p.mergeRequest, body);
+        }
+        if (created != null) {
+            note.put("noteId", created.getId());
+        }
+
+        final JSONArray rows = new JSONArray();
+        for (Row row : history) {
+            rows.add(row.toJSON());
+        }
+        note.put("history", rows);
+        // most recently updated merge requests last, so that the oldest ones are dropped first
+        notes.remove(iid);
+        notes.put(iid, note);
+        final List<Object> iids = new ArrayList<Object>(notes.keySet());
+        for (int i = 0; i < iids.size() - MAX_MERGE_REQUESTS; i++) {
+            notes.remove(iids.get(i));
+        }
+        FileUtils.writeStringToFile(p.file, notes.toString(), "UTF-8");
+    }
+
+    /**
+     * @return the notes of the job, none if the file is missing or corrupt, which then gets overwritten
+     */
+    private static JSONObject read(File file) throws IOException {
+        if (!file.exists()) {
+            return new JSONObject();
+        }
+        try {
+            return JSONObject.fromObject(FileUtils.readFileToString(file, "UTF-8"));
+        } catch (JSONException e) {
+            LOGGER.log(Level.WARNING, "Ignoring corrupt " + file, e);
+            return new JSONObject();
+        }
+    }
+
+    private static String render(List<Row> history) {
+        final Row last = history.get(history.size() - 1);
+        final StringBuilder msg = new StringBuilder();
+        msg.append(Result.SUCCESS.toString().equals(last.result) ? ":white_check_mark:" : ":anguished:");
+        msg.append(" Jenkins Build ").append(describe(last.result));
+        msg.append("\n\nResults available at: [Jenkins](").append(last.url).append(")");
+        msg.append("\n\n| Build | Commit | Result |\n| --- | --- | --- |\n");
+        for (int i = history.size() - 1; i >= 0; i--) {
+            final Row row = history.get(i);
+            msg.append("| [#").append(row.number).append("](").append(row.url).append(") | ")
+                    .append(row.commit == null ? "" : row.commit.substring(0, Math.min(8, row.commit.length()))).append(" | ")
+                    .append(describe(row.result)).append(" |\n");
+        }
+        return msg.toString();
+    }
+
+    private static String describe(String result) {
+        return Result.fromString(result).color.getDescription();
+    }
+
+    private static final class Pending {
+
+        private final GitLabConnection connection;
+        private final GitlabMergeRequest mergeRequest;
+        private final File file;
+        private final List<Row> rows = new ArrayList<Row>();
+
+        private Pending(GitLabConnection connection, GitlabMergeRequest mergeRequest, File file) {
+            this.connection = connection;
+            this.mergeRequest = mergeRequest;
+            this.file = file;
+        }
+
+    }
+
+    private static final class Row {
+
+        private final int number;
+        private final String commit;
+        private final String result;
+        private final String url;
+
+        private Row(AbstractBuild<?, ?> build) {
+            final GitLabMergeCause cause = build.getCause(GitLabMergeCause.class);
+            final GitLabMergeRequest.ObjectAttributes attributes = cause == null ? null : cause.getMergeRequest().getObjectAttribute();
+            this.number = build.getNumber();
+            this.commit = attributes == null || attributes.getLastCommit() == null ? null : attributes.getLastCommit().getId();
+            this.result = String.valueOf(build.getResult());
+            this.url = Jenkins.getInstance().getRootUrl() + build.getUrl();
+        }
+
+        private Row(JSONObject json) {
+            this.number = json.getInt("number");
+            this.commit = json.has("commit") ? json.getString("commit") : null;
+            this.result = json.getString("result");
+            this.url = json.getString("url");
+        }
+
+        private JSONObject toJSON() {
+            final JSONObject json = new JSONObject();
+            json.put("number", number);
+            if (commit != null) {
+                json.put("commit", commit);
+            }
+            json.put("result", result);
+            json.put("url", url);
+            return json;
+        }
+
+    }
+
+}
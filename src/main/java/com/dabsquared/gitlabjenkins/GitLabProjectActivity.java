@@ -0,0 +1,23 @@
+package com.dabsquared.gitlabjenkins;
+
+import org.codehaus.jackson.annotate.JsonIgnoreProperties;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+/**
+ * A GitLab project reduced to the time of its last activity (pushes, merge request updates, ...).
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class GitLabProjectActivity {
+
+    @JsonProperty("last_activity_at")
+    private String lastActivityAt;
+
+    public String getLastActivityAt() {
+        return lastActivityAt;
+    }
+
+    public void setLastActivityAt(String lastActivityAt) {
+        this.lastActivityAt = lastActivityAt;
+    }
+
+}
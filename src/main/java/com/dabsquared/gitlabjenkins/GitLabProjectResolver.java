@@ -0,0 +1,124 @@
+package com.dabsquared.gitlabjenkins;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.listeners.ItemListener;
+import hudson.security.ACL;
+
+import jenkins.model.Jenkins;
+
+/**
+ * Resolves the project addressed by a webhook URL, walking down folders one path segment at a time.
+ *
+ * Every resolved path prefix is remembered, including the ones that lead nowhere, so that repeated
+ * requests (badges in particular) cost a map lookup per folder level. Any change to the item tree
+ * throws the remembered paths away.
+ */
+public class GitLabProjectResolver {
+
+    private static final Object NOT_FOUND = new Object();
+
+    private static final GitLabProjectResolver INSTANCE = new GitLabProjectResolver();
+
+    private final GitLabCacheManager.NamedCache<String, Object> items = GitLabCacheManager.get().register("webhook-paths", 1);
+
+    /** Incremented by every clear, so that lookups which raced with one don't keep their stale result. */
+    private final AtomicLong generation = new AtomicLong();
+
+    public static GitLabProjectResolver get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param projectName     first segment of the path, the full name of a project or of the outermost folder
+     * @param restOfPathParts remaining segments; the ones naming nested items are consumed
+     * @return the project, or null if the path doesn't lead to one
+     */
+    public AbstractProject<?, ?> resolve(String projectName, Iterator<String> restOfPathParts) {
+        String path = projectName;
+        Object item = lookup(path, null, projectName);
+        while (item instanceof ItemGroup<?> && !(item instanceof AbstractProject<?, ?>) && restOfPathParts.hasNext()) {
+            final String name = restOfPathParts.next();
+            path = path + '/' + name;
+            item = lookup(path, (ItemGroup<?>) item, name);
+        }
+        return item instanceof AbstractProject<?, ?> ? (AbstractProject<?, ?>) item : null;
+    }
+
+    public void clear() {
+        generation.incrementAndGet();
+        items.flush();
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    private Object lookup(String path, final ItemGroup<?> parent, final String name) {
+        final long started = generation.get();
+        final Object item = items.get(path, new GitLabCacheManager.Loader<Object, RuntimeException>() {
+
+            public Object load() {
+                final Object[] holder = new Object[] { null };
+                ACL.impersonate(ACL.SYSTEM, new Runnable() {
+
+                    public void run() {
+                        final Jenkins jenkins = Jenkins.getInstance();
+                        if (jenkins != null) {
+                            holder[0] = parent == null ? jenkins.getItemByFullName(name) : jenkins.getItem(name, parent);
+                        }
+                    }
+
+                });
+                return holder[0] == null ? NOT_FOUND : holder[0];
+            }
+
+        });
+        if (generation.get() != started) {
+            // the item tree changed while looking up, e.g. the job was just created
+            items.remove(path);
+        }
+        return item == NOT_FOUND ? null : item;
+    }
+
+    @Extension
+    public static class ItemListenerImpl extends ItemListener {
+
+        @Override
+        public void onCreated(Item item) {
+            INSTANCE.clear();
+        }
+
+        @Override
+        public void onCopied(Item src, Item item) {
+            INSTANCE.clear();
+        }
+
+        @Override
+        public void onRenamed(Item item, String oldName, String newName) {
+            INSTANCE.clear();
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            INSTANCE.clear();
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            INSTANCE.clear();
+        }
+
+        @Override
+        public void onLoaded() {
+            INSTANCE.clear();
+        }
+
+    }
+
+}
@@ -11,19 +11,60 @@ import hudson.triggers.SCMTrigger;
 public class GitLabPushCause extends SCMTrigger.SCMTriggerCause {
 
     private final String pushedBy;
+    private final Integer projectId;
+    private final String ref;
+    private final String commit;
 
     public GitLabPushCause(String pushedBy) {
-        this.pushedBy = pushedBy;
+        this(pushedBy, null, null, null);
     }
 
     public GitLabPushCause(String pushedBy, File logFile) throws IOException {
-        super(logFile);
-        this.pushedBy = pushedBy;
+        this(pushedBy, null, null, null, logFile);
     }
 
     public GitLabPushCause(String pushedBy, String pollingLog) {
         super(pollingLog);
         this.pushedBy = pushedBy;
+        this.projectId = null;
+        this.ref = null;
+        this.commit = null;
+    }
+
+    public GitLabPushCause(String pushedBy, Integer projectId, String ref, String commit) {
+        this.pushedBy = pushedBy;
+        this.projectId = projectId;
+        this.ref = ref;
+        this.commit = commit;
+    }
+
+    public GitLabPushCause(String pushedBy, Integer projectId, String ref, String commit, File logFile) throws IOException {
+        super(logFile);
+        this.pushedBy = pushedBy;
+        this.projectId = projectId;
+        this.ref = ref;
+        this.commit = commit;
+    }
+
+    /**
+     * @return id of the GitLab project pushed to, null for builds started before it was recorded
+     */
+    public Integer getProjectId() {
+        return projectId;
+    }
+
+    /**
+     * @return the pushed branch or tag name
+     */
+    public String getRef() {
+        return ref;
+    }
+
+    /**
+     * @return SHA of the commit being built
+     */
+    public String getCommit() {
+        return commit;
     }
 
     @Override
@@ -12,6 +12,8 @@ import org.apache.commons.lang.builder.ToStringStyle;
  */
 public class GitLabPushRequest extends GitLabRequest {
 
+    public static final String KIND = "push";
+
     public static GitLabPushRequest create(String payload) {
         if (payload == null) {
             throw new IllegalArgumentException("payload should not be null");
@@ -27,6 +29,7 @@ public class GitLabPushRequest extends GitLabRequest {
     private String before;
     private String after;
     private String ref;
+    private String checkout_sha;
     private Integer user_id;
     private String user_name;
     private Integer project_id;
@@ -39,7 +42,7 @@ public class GitLabPushRequest extends GitLabRequest {
     }
 
     public Commit getLastCommit() {
-        if (commits.isEmpty()) {
+        if (commits == null || commits.isEmpty()) {
             return null;
         }
         return commits.get(commits.size() - 1);
@@ -49,6 +52,10 @@ public class GitLabPushRequest extends GitLabRequest {
         this.commits = commits;
     }
 
+    public GitLabPushType getPushType() {
+        return GitLabPushType.classify(before, after, ref);
+    }
+
     public Repository getRepository() {
         return repository;
     }
@@ -89,6 +96,14 @@ public class GitLabPushRequest extends GitLabRequest {
         this.ref = ref;
     }
 
+    public String getCheckout_sha() {
+        return checkout_sha;
+    }
+
+    public void setCheckout_sha(String checkoutSha) {
+        this.checkout_sha = checkoutSha;
+    }
+
     public Integer getUser_id() {
         return user_id;
     }
@@ -182,6 +197,12 @@ public class GitLabPushRequest extends GitLabRequest {
 
         private User author;
 
+        private List<String> added;
+
+        private List<String> modified;
+
+        private List<String> removed;
+
         public Commit() {
         }
 
@@ -225,6 +246,30 @@ public class GitLabPushRequest extends GitLabRequest {
             this.author = author;
         }
 
+        public List<String> getAdded() {
+            return added;
+        }
+
+        public void setAdded(List<String> added) {
+            this.added = added;
+        }
+
+        public List<String> getModified() {
+            return modified;
+        }
+
+        public void setModified(List<String> modified) {
+            this.modified = modified;
+        }
+
+        public List<String> getRemoved() {
+            return removed;
+        }
+
+        public void setRemoved(List<String> removed) {
+            this.removed = removed;
+        }
+
         @Override
         public String toString() {
             return ToStringBuilder.reflectionToString(this, ToStringStyle.MULTI_LINE_STYLE);
@@ -6,6 +6,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -18,6 +19,7 @@ import org.gitlab.api.models.GitlabBranch;
 import org.gitlab.api.models.GitlabProject;
 import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 import org.springframework.util.AntPathMatcher;
@@ -58,10 +60,12 @@ import hudson.scm.SCM;
 import hudson.triggers.Trigger;
 import hudson.triggers.TriggerDescriptor;
 import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
 import hudson.util.SequentialExecutionQueue;
 import hudson.util.XStream2;
 
 import jenkins.model.Jenkins;
+import jenkins.util.Timer;
 
 /**
  * Triggers a build when we receive a GitLab WebHook.
@@ -76,8 +80,21 @@ public class GitLabPushTrigger extends Trigger<AbstractProject<?, ?>> {
     private boolean triggerOpenMergeRequestOnPush = true;
     private boolean setBuildDescription = true;
     private boolean addNoteOnMergeRequest = true;
+    private boolean publishCommitStatus = false;
+    private boolean rollingMergeRequestNote = false;
+    private boolean reuseTreeResults = false;
+    private boolean pollGitLabApi = false;
+    private String gitLabConnection;
     private final String includeBranchesSpec;
     private final String excludeBranchesSpec;
+    private String includeTagsSpec;
+    private String excludeTagsSpec;
+    private String skipMarkersSpec;
+    private String includePathsSpec;
+    private String excludePathsSpec;
+    private transient volatile GitLabRefFilter branchFilter;
+    private transient volatile GitLabRefFilter tagFilter;
+    private transient volatile GitLabChangeFilter changeFilter;
 
     @DataBoundConstructor
     public GitLabPushTrigger(boolean triggerOnPush, boolean triggerOnMergeRequest, boolean triggerOpenMergeRequestOnPush, boolean setBuildDescription,
@@ -110,26 +127,74 @@ public class GitLabPushTrigger extends Trigger<AbstractProject<?, ?>> {
         return addNoteOnMergeRequest;
     }
 
-    private boolean isBranchAllowed(final String branchName) {
-        final List<String> exclude = DescriptorImpl.splitBranchSpec(this.getExcludeBranchesSpec());
-        final List<String> include = DescriptorImpl.splitBranchSpec(this.getIncludeBranchesSpec());
-        if (exclude.isEmpty() && include.isEmpty()) {
-            return true;
-        }
+    public boolean getPublishCommitStatus() {
+        return publishCommitStatus;
+    }
 
-        final AntPathMatcher matcher = new AntPathMatcher();
-        for (final String pattern : exclude) {
-            if (matcher.match(pattern, branchName)) {
-                return false;
-            }
-        }
-        for (final String pattern : include) {
-            if (matcher.match(pattern, branchName)) {
-                return true;
-            }
+    @DataBoundSetter
+    public void setPublishCommitStatus(boolean publishCommitStatus) {
+        this.publishCommitStatus = publishCommitStatus;
+    }
+
+    public boolean getRollingMergeRequestNote() {
+        return rollingMergeRequestNote;
+    }
+
+    @DataBoundSetter
+    public void setRollingMergeRequestNote(boolean rollingMergeRequestNote) {
+        this.rollingMergeRequestNote = rollingMergeRequestNote;
+    }
+
+    public boolean getReuseTreeResults() {
+        return reuseTreeResults;
+    }
+
+    @DataBoundSetter
+    public void setReuseTreeResults(boolean reuseTreeResults) {
+        this.reuseTreeResults = reuseTreeResults;
+    }
+
+    public boolean getPollGitLabApi() {
+        return pollGitLabApi;
+    }
+
+    @DataBoundSetter
+    public void setPollGitLabApi(boolean pollGitLabApi) {
+        this.pollGitLabApi = pollGitLabApi;
+    }
+
+    public String getGitLabConnection() {
+        return gitLabConnection;
+    }
+
+    @DataBoundSetter
+    public void setGitLabConnection(String gitLabConnection) {
+        this.gitLabConnection = gitLabConnection;
+    }
+
+    /**
+     * @return the selected GitLab connection, the first configured one if none was selected, or null if the
+     *         selected one no longer exists
+     */
+    @Nullable
+    public GitLabConnection getConnection() {
+        return getDescriptor().getConnection(gitLabConnection);
+    }
+
+    boolean isBranchAllowed(final String branchName) {
+        GitLabRefFilter filter = branchFilter;
+        if (filter == null) {
+            branchFilter = filter = GitLabRefFilter.compile(this.getIncludeBranchesSpec(), this.getExcludeBranchesSpec());
         }
+        return filter.isAllowed(branchName);
+    }
 
-        return false;
+    boolean isTagAllowed(final String tagName) {
+        GitLabRefFilter filter = tagFilter;
+        if (filter == null) {
+            tagFilter = filter = GitLabRefFilter.compile(this.getIncludeTagsSpec(), this.getExcludeTagsSpec());
+        }
+        return filter.isAllowed(tagName);
     }
 
     public String getIncludeBranchesSpec() {
@@ -140,29 +205,200 @@ public class GitLabPushTrigger extends Trigger<AbstractProject<?, ?>> {
         return this.excludeBranchesSpec;
     }
 
+    public String getIncludeTagsSpec() {
+        return this.includeTagsSpec;
+    }
+
+    public String getExcludeTagsSpec() {
+        return this.excludeTagsSpec;
+    }
+
+    @DataBoundSetter
+    public void setIncludeTagsSpec(String includeTagsSpec) {
+        this.includeTagsSpec = includeTagsSpec;
+        this.tagFilter = null;
+    }
+
+    @DataBoundSetter
+    public void setExcludeTagsSpec(String excludeTagsSpec) {
+        this.excludeTagsSpec = excludeTagsSpec;
+        this.tagFilter = null;
+    }
+
+    public String getSkipMarkersSpec() {
+        return this.skipMarkersSpec;
+    }
+
+    public String getIncludePathsSpec() {
+        return this.includePathsSpec;
+    }
+
+    public String getExcludePathsSpec() {
+        return this.excludePathsSpec;
+    }
+
+    @DataBoundSetter
+    public void setSkipMarkersSpec(String skipMarkersSpec) {
+        this.skipMarkersSpec = skipMarkersSpec;
+        this.changeFilter = null;
+    }
+
+    @DataBoundSetter
+    public void setIncludePathsSpec(String includePathsSpec) {
+        this.includePathsSpec = includePathsSpec;
+        this.changeFilter = null;
+    }
+
+    @DataBoundSetter
+    public void setExcludePathsSpec(String excludePathsSpec) {
+        this.excludePathsSpec = excludePathsSpec;
+        this.changeFilter = null;
+    }
+
+    private GitLabChangeFilter getChangeFilter() {
+        GitLabChangeFilter filter = changeFilter;
+        if (filter == null) {
+            changeFilter = filter = GitLabChangeFilter.compile(this.getSkipMarkersSpec(), this.getIncludePathsSpec(), this.getExcludePathsSpec());
+        }
+        return filter;
+    }
+
+    /**
+     * Checks the changed files of a branch push against the path filter. Uses the file lists of the
+     * payload and falls back to asking GitLab when the payload doesn't carry them.
+     */
+    private boolean isChangeRelevant(final GitLabPushRequest req) {
+        final GitLabChangeFilter filter = this.getChangeFilter();
+        if (!filter.hasPathFilter() || req.getPushType() == GitLabPushType.TAG) {
+            return true;
+        }
+        Set<String> paths = filter.getChangedPaths(req);
+        final GitLabConnection connection = this.getConnection();
+        if (paths == null && connection != null) {
+            paths = connection.getChangedPaths(req.getProject_id(), req.getBefore(), req.getAfter());
+        }
+        return paths == null || filter.isRelevant(paths);
+    }
+
+    /**
+     * Reports a push whose tree was already built successfully as passed, without building it again.
+     */
+    private boolean isTreeAlreadyPassed(final GitLabPushRequest req) {
+        final GitLabConnection connection = this.getConnection();
+        if (!reuseTreeResults || connection == null || req.getPushType() == GitLabPushType.TAG) {
+            return false;
+        }
+        final String commit = getRevision(req);
+        final Integer number;
+        try {
+            number = GitLabTreeResults.get().findPassed(job, connection, req.getProject_id(), commit);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not look up the tree of {0}: {1}", new Object[] { commit, e.getMessage() });
+            return false;
+        }
+        if (number == null) {
+            return false;
+        }
+        LOGGER.log(Level.INFO, "GitLab Push Request for {0}: the tree of {1} already passed in #{2}, no build started.",
+                   new Object[] { job.getName(), commit, String.valueOf(number) });
+        try {
+            GitLabTreeResults.get().recordReused(job, number, commit);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not record the reused result of #{0}: {1}", new Object[] { String.valueOf(number), e.getMessage() });
+        }
+        GitLabCommitStatusPublisher.get().publish(connection, req.getProject_id(), commit, getSourceBranch(req), GitLabCommitStatus.SUCCESS,
+                                                  job.getFullName(), Jenkins.getInstance().getRootUrl() + job.getUrl() + number + "/",
+                                                  "Same tree passed in #" + number);
+        return true;
+    }
+
+    private boolean isPushAllowed(final GitLabPushRequest req) {
+        final GitLabPushType pushType = req.getPushType();
+        if (!triggerOnPush || !pushType.isBuildable()) {
+            return false;
+        }
+        if (pushType == GitLabPushType.TAG) {
+            return this.isTagAllowed(this.getTagName(req));
+        }
+        if (!this.isBranchAllowed(this.getSourceBranch(req))) {
+            return false;
+        }
+        if (this.getChangeFilter().isSkipped(req)) {
+            LOGGER.log(Level.INFO, "GitLab Push Request for {0} asks to skip the build.", job.getName());
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void start(AbstractProject<?, ?> project, boolean newInstance) {
+        super.start(project, newInstance);
+        GitLabTriggerRegistry.register(project, this);
+    }
+
+    @Override
+    public void stop() {
+        if (job != null) {
+            GitLabTriggerRegistry.unregister(job, this);
+        }
+        super.stop();
+    }
+
     public void onPost(final GitLabPushRequest req) {
-        if (triggerOnPush && this.isBranchAllowed(this.getSourceBranch(req))) {
+        GitLabReconciler.seen(job, req.getProject_id());
+        final GitLabPushType pushType = req.getPushType();
+        if (pushType == GitLabPushType.CREATE || pushType == GitLabPushType.UPDATE) {
+            // built or filtered out below, either way there is nothing to catch up on
+            GitLabReconciler.decided(job, getSourceBranch(req), req.getAfter());
+            GitLabApiPoller.decided(job, req.getProject_id(), getSourceBranch(req), req.getAfter());
+        }
+        if (this.isPushAllowed(req)) {
+            journal(req);
             getDescriptor().queue.execute(new Runnable() {
 
                 public void run() {
-                    LOGGER.log(Level.INFO, "{0} triggered.", job.getName());
-                    String name = " #" + job.getNextBuildNumber();
-                    GitLabPushCause cause = createGitLabPushCause(req);
-                    Action[] actions = createActions(req);
-                    if (job.scheduleBuild(job.getQuietPeriod(), cause, actions)) {
-                        LOGGER.log(Level.INFO, "GitLab Push Request detected in {0}. Triggering {1}", new String[] { job.getName(), name });
-                    } else {
-                        LOGGER.log(Level.INFO, "GitLab Push Request detected in {0}. Job is already in the queue.", job.getName());
+                    if (!isChangeRelevant(req)) {
+                        LOGGER.log(Level.INFO, "GitLab Push Request for {0} doesn''t change any relevant path, no build started.", job.getName());
+                        checkpoint(req);
+                        return;
+                    }
+                    if (isTreeAlreadyPassed(req)) {
+                        checkpoint(req);
+                        return;
                     }
+                    LOGGER.log(Level.INFO, "{0} triggered.", job.getName());
+                    final GitLabPushCause cause = createGitLabPushCause(req);
+                    final Action[] actions = createActions(req);
+                    GitLabBuildDispatcher.get().submit(cause, new GitLabBuildDispatcher.Ticket() {
+
+                        public boolean schedule() {
+                            String name = " #" + job.getNextBuildNumber();
+                            try {
+                                if (job.scheduleBuild(job.getQuietPeriod(), cause, actions)) {
+                                    LOGGER.log(Level.INFO, "GitLab Push Request detected in {0}. Triggering {1}", new String[] { job.getName(), name });
+                                    publishCommitStatus(cause.getProjectId(), cause.getCommit(), cause.getRef(), GitLabCommitStatus.PENDING,
+                                                        Jenkins.getInstance().getRootUrl() + job.getUrl(), "Build queued");
+                                    return true;
+                                }
+                                LOGGER.log(Level.INFO, "GitLab Push Request detected in {0}. Job is already in the queue.", job.getName());
+                                return false;
+                            } finally {
+                                checkpoint(req);
+                            }
+                        }
+
+                    });
                 }
 
                 private GitLabPushCause createGitLabPushCause(GitLabPushRequest req) {
                     GitLabPushCause cause;
-                    String triggeredByUser = req.getCommits().get(0).getAuthor().getName();
+                    String triggeredByUser = req.getCommits() == null || req.getCommits().isEmpty()
+                            ? req.getUser_name() : req.getCommits().get(0).getAuthor().getName();
+                    String ref = req.getPushType() == GitLabPushType.TAG ? getTagName(req) : getSourceBranch(req);
                     try {
-                        cause = new GitLabPushCause(triggeredByUser, getLogFile());
+                        cause = new GitLabPushCause(triggeredByUser, req.getProject_id(), ref, getRevision(req), getLogFile());
                     } catch (IOException ex) {
-                        cause = new GitLabPushCause(triggeredByUser);
+                        cause = new GitLabPushCause(triggeredByUser, req.getProject_id(), ref, getRevision(req));
                     }
                     return cause;
                 }
@@ -170,9 +406,10 @@ public class GitLabPushTrigger extends Trigger<AbstractProject<?, ?>> {
                 private Action[] createActions(GitLabPushRequest req) {
                     ArrayList<Action> actions = new ArrayList<Action>();
 
-                    String branch = getSourceBranch(req);
+                    // a tag push has no branch, its tag name is what jobs check out
+                    String branch = req.getPushType() == GitLabPushType.TAG ? getTagName(req) : getSourceBranch(req);
 
-                    LOGGER.log(Level.INFO, "GitLab Push Request from branch {0}.", branch);
+                    LOGGER.log(Level.INFO, "GitLab Push Request from {0}.", branch);
 
                     Map<String, ParameterValue> values = new HashMap<String, ParameterValue>();
                     values.put("gitlabSourceBranch", new StringParameterValue("gitlabSourceBranch", branch));
@@ -180,13 +417,16 @@ public class GitLabPushTrigger extends Trigger<AbstractProject<?, ?>> {
                     values.put("gitlabBranch", new StringParameterValue("gitlabBranch", branch));
                     values.put("gitlabSourceRepoName", new StringParameterValue("gitlabSourceRepoName", getDesc().getSourceRepoNameDefault()));
                     values.put("gitlabSourceRepoURL", new StringParameterValue("gitlabSourceRepoURL", getDesc().getSourceRepoURLDefault().toString()));
+                    if (req.getPushType() == GitLabPushType.TAG) {
+                        values.put("gitlabTag", new StringParameterValue("gitlabTag", getTagName(req)));
+                    }
 
                     List<ParameterValue> listValues = new ArrayList<ParameterValue>(values.values());
 
                     ParametersAction parametersAction = new ParametersAction(listValues);
                     actions.add(parametersAction);
 
-                    RevisionParameterAction revision = new RevisionParameterAction(req.getLastCommit().getId());
+                    RevisionParameterAction revision = new RevisionParameterAction(getRevision(req));
                     actions.add(revision);
                     Action[] actionsArray = actions.toArray(new Action[0]);
 
@@ -194,22 +434,59 @@ public class GitLabPushTrigger extends Trigger<AbstractProject<?, ?>> {
                 }
 
             });
+        } else {
+            checkpoint(req);
         }
     }
 
     public void onPost(final GitLabMergeRequest req) {
+        GitLabReconciler.seen(job, req.getObjectAttribute().getTargetProjectId());
         if (triggerOnMergeRequest) {
+            final String jobName = job.getFullName();
+            if (!GitLabQueuedMergeRequests.get().accept(jobName, req)) {
+                LOGGER.log(Level.INFO, "GitLab Merge Request for {0} is already waiting to be built.", job.getName());
+                checkpoint(req);
+                return;
+            }
+            journal(req);
+            final GitLabConnection connection = getConnection();
+            final GitLabMergeRequestEnricher.Enrichment enrichment = connection == null ? null : GitLabMergeRequestEnricher.start(connection, req);
             getDescriptor().queue.execute(new Runnable() {
 
                 public void run() {
-                    LOGGER.log(Level.INFO, "{0} triggered.", job.getName());
-                    String name = " #" + job.getNextBuildNumber();
-                    GitLabMergeCause cause = createGitLabMergeCause(req);
-                    Action[] actions = createActions(req);
-                    if (job.scheduleBuild(job.getQuietPeriod(), cause, actions)) {
-                        LOGGER.log(Level.INFO, "GitLab Merge Request detected in {0}. Triggering {1}", new String[] { job.getName(), name });
-                    } else {
-                        LOGGER.log(Level.INFO, "GitLab Merge Request detected in {0}. Job is already in the queue.", job.getName());
+                    boolean submitted = false;
+                    try {
+                        LOGGER.log(Level.INFO, "{0} triggered.", job.getName());
+                        if (enrichment != null && req.getDetails() == null) {
+                            req.setDetails(enrichment.getMergeRequest());
+                        }
+                        final GitLabMergeCause cause = createGitLabMergeCause(req);
+                        final Action[] actions = createActions(req);
+                        GitLabBuildDispatcher.get().submit(cause, new GitLabBuildDispatcher.Ticket() {
+
+                            public boolean schedule() {
+                                String name = " #" + job.getNextBuildNumber();
+                                try {
+                                    if (job.scheduleBuild(job.getQuietPeriod(), cause, actions)) {
+                                        LOGGER.log(Level.INFO, "GitLab Merge Request detected in {0}. Triggering {1}", new String[] { job.getName(), name });
+                                        publishCommitStatus(req, GitLabCommitStatus.PENDING, Jenkins.getInstance().getRootUrl() + job.getUrl(), "Build queued");
+                                        return true;
+                                    }
+                                    LOGGER.log(Level.INFO, "GitLab Merge Request detected in {0}. Job is already in the queue.", job.getName());
+                                    return false;
+                                } finally {
+                                    // the queue item, if any, now stands for the event
+                                    GitLabQueuedMergeRequests.get().release(jobName, req);
+                                    checkpoint(req);
+                                }
+                            }
+
+                        });
+                        submitted = true;
+                    } finally {
+                        if (!submitted) {
+                            GitLabQueuedMergeRequests.get().release(jobName, req);
+                        }
                     }
                 }
 
@@ -233,13 +510,17 @@ public class GitLabPushTrigger extends Trigger<AbstractProject<?, ?>> {
                     String sourceRepoName = getDesc().getSourceRepoNameDefault();
                     String sourceRepoURL = getDesc().getSourceRepoURLDefault().toString();
 
-                    if (!getDescriptor().getGitlabHostUrl().isEmpty()) {
-                        // Get source repository if communication to Gitlab is possible
-                        try {
-                            sourceRepoName = req.getSourceProject(getDesc().getGitlab()).getPathWithNamespace();
-                            sourceRepoURL = req.getSourceProject(getDesc().getGitlab()).getSshUrl();
-                        } catch (IOException ex) {
-                            LOGGER.log(Level.WARNING, "Could not fetch source project''s data from Gitlab. '('{0}':' {1}')'", new String[] { ex.toString(), ex.getMessage() });
+                    if (enrichment != null) {
+                        // Get source and target repositories if Gitlab answered in time
+                        GitlabProject sourceProject = enrichment.getSourceProject();
+                        if (sourceProject != null) {
+                            sourceRepoName = sourceProject.getPathWithNamespace();
+                            sourceRepoURL = sourceProject.getSshUrl();
+                        }
+                        GitlabProject targetProject = enrichment.getTargetProject();
+                        if (targetProject != null) {
+                            values.put("gitlabTargetRepoName", new StringParameterValue("gitlabTargetRepoName", targetProject.getPathWithNamespace()));
+                            values.put("gitlabTargetRepoURL", new StringParameterValue("gitlabTargetRepoURL", targetProject.getSshUrl()));
                         }
                     }
 
@@ -257,6 +538,25 @@ public class GitLabPushTrigger extends Trigger<AbstractProject<?, ?>> {
                 }
 
             });
+        } else {
+            checkpoint(req);
+        }
+    }
+
+    /**
+     * Records the accepted event in the journal, unless it is already there (i.e. it is being replayed).
+     */
+    private void journal(GitLabRequest req) {
+        final GitLabEventJournal journal = GitLabEventJournal.get();
+        if (journal != null && req.getJournalEntry() == 0) {
+            req.setJournalEntry(journal.append(job.getFullName(), req));
+        }
+    }
+
+    private static void checkpoint(GitLabRequest req) {
+        final GitLabEventJournal journal = GitLabEventJournal.get();
+        if (journal != null && req.getJournalEntry() != 0) {
+            journal.checkpoint(req.getJournalEntry());
         }
     }
 
@@ -281,16 +581,52 @@ public class GitLabPushTrigger extends Trigger<AbstractProject<?, ?>> {
         }
     }
 
-    public void onCompleted(AbstractBuild build) {
+    public void onCompleted(final AbstractBuild build) {
+        final Result result = build.getResult();
+        if (result == Result.SUCCESS) {
+            publishCommitStatus(build, GitLabCommitStatus.SUCCESS, "Build succeeded");
+        } else if (result == Result.ABORTED) {
+            publishCommitStatus(build, GitLabCommitStatus.CANCELED, "Build aborted");
+        } else {
+            publishCommitStatus(build, GitLabCommitStatus.FAILED, "Build " + (result == null ? "failed" : result.color.getDescription().toLowerCase()));
+        }
+
         Cause mCause = build.getCause(GitLabMergeCause.class);
         if (mCause != null && mCause instanceof GitLabMergeCause) {
             onCompleteMergeRequest(build, (GitLabMergeCause) mCause);
         }
 
+        final GitLabPushCause pCause = (GitLabPushCause) build.getCause(GitLabPushCause.class);
+        final GitLabConnection connection = getConnection();
+        if (reuseTreeResults && result == Result.SUCCESS && pCause != null && pCause.getProjectId() != null && pCause.getCommit() != null
+                && connection != null) {
+            Timer.get().submit(new Runnable() {
+
+                public void run() {
+                    try {
+                        GitLabTreeResults.get().recordPassed(build, connection, pCause.getProjectId(), pCause.getCommit());
+                    } catch (IOException e) {
+                        LOGGER.log(Level.WARNING, "Could not record the tree of {0}: {1}", new Object[] { pCause.getCommit(), e.getMessage() });
+                    }
+                }
+
+            });
+        }
+
     }
 
     private void onCompleteMergeRequest(AbstractBuild abstractBuild, GitLabMergeCause cause) {
-        if (addNoteOnMergeRequest) {
+        final GitLabConnection connection = getConnection();
+        if (addNoteOnMergeRequest && connection != null) {
+            if (rollingMergeRequestNote) {
+                try {
+                    GitLabMergeRequestNotes.get().post(connection, getMergeRequest(connection, cause), abstractBuild);
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Could not fetch merge request !{0}: {1}",
+                               new Object[] { String.valueOf(cause.getMergeRequest().getObjectAttribute().getIid()), e.getMessage() });
+                }
+                return;
+            }
             StringBuilder msg = new StringBuilder();
             if (abstractBuild.getResult() == Result.SUCCESS) {
                 msg.append(":white_check_mark:");
@@ -302,11 +638,7 @@ public class GitLabPushTrigger extends Trigger<AbstractProject<?, ?>> {
             msg.append("\n\nResults available at: ")
                     .append("[").append("Jenkins").append("](").append(buildUrl).append(")");
             try {
-                GitlabProject proj = new GitlabProject();
-                proj.setId(cause.getMergeRequest().getObjectAttribute().getTargetProjectId());
-                org.gitlab.api.models.GitlabMergeRequest mr = this.getDescriptor().getGitlab().instance().
-                        getMergeRequest(proj, cause.getMergeRequest().getObjectAttribute().getId());
-                this.getDescriptor().getGitlab().instance().createNote(mr, msg.toString());
+                connection.getClient().createNote(getMergeRequest(connection, cause), msg.toString());
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -314,8 +646,57 @@ public class GitLabPushTrigger extends Trigger<AbstractProject<?, ?>> {
 
     }
 
+    private org.gitlab.api.models.GitlabMergeRequest getMergeRequest(GitLabConnection connection, GitLabMergeCause cause) throws IOException {
+        org.gitlab.api.models.GitlabMergeRequest mr = cause.getMergeRequest().getDetails();
+        if (mr == null) {
+            GitlabProject proj = new GitlabProject();
+            proj.setId(cause.getMergeRequest().getObjectAttribute().getTargetProjectId());
+            mr = connection.getClient().getMergeRequest(proj, cause.getMergeRequest().getObjectAttribute().getId());
+        }
+        return mr;
+    }
+
     public void onStarted(AbstractBuild abstractBuild) {
         setBuildCauseInJob(abstractBuild);
+        if (reuseTreeResults && abstractBuild.getCause(GitLabPushCause.class) != null) {
+            try {
+                GitLabTreeResults.get().recordStarted(abstractBuild);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not record the configuration of {0}: {1}",
+                           new Object[] { abstractBuild.getFullDisplayName(), e.getMessage() });
+            }
+        }
+        publishCommitStatus(abstractBuild, GitLabCommitStatus.RUNNING, "Build running");
+    }
+
+    private void publishCommitStatus(AbstractBuild build, String state, String description) {
+        final String targetUrl = Jenkins.getInstance().getRootUrl() + build.getUrl();
+        final GitLabPushCause pcause = (GitLabPushCause) build.getCause(GitLabPushCause.class);
+        if (pcause != null) {
+            publishCommitStatus(pcause.getProjectId(), pcause.getCommit(), pcause.getRef(), state, targetUrl, description);
+        }
+        final GitLabMergeCause mcause = (GitLabMergeCause) build.getCause(GitLabMergeCause.class);
+        if (mcause != null) {
+            publishCommitStatus(mcause.getMergeRequest(), state, targetUrl, description);
+        }
+    }
+
+    private void publishCommitStatus(GitLabMergeRequest req, String state, String targetUrl, String description) {
+        final GitLabMergeRequest.ObjectAttributes attributes = req.getObjectAttribute();
+        if (attributes.getLastCommit() != null) {
+            publishCommitStatus(attributes.getSourceProjectId(), attributes.getLastCommit().getId(), attributes.getSourceBranch(),
+                                state, targetUrl, description);
+        }
+    }
+
+    /**
+     * Hands the state of the commit to GitLab, so that it shows in merge requests and commit lists.
+     */
+    private void publishCommitStatus(Integer projectId, String commit, String ref, String state, String targetUrl, String description) {
+        final GitLabConnection connection = getConnection();
+        if (publishCommitStatus && connection != null) {
+            GitLabCommitStatusPublisher.get().publish(connection, projectId, commit, ref, state, job.getFullName(), targetUrl, description);
+        }
     }
 
     private String getSourceBranch(GitLabRequest req) {
@@ -329,6 +710,22 @@ public class GitLabPushTrigger extends Trigger<AbstractProject<?, ?>> {
         return result;
     }
 
+    private String getTagName(GitLabPushRequest req) {
+        return req.getRef().replaceFirst("^refs/tags/", "");
+    }
+
+    /**
+     * @return the commit to build; a tag push has no commit list, and its 'after' SHA
+     *         points to the tag object for annotated tags, so prefer the checked out commit.
+     */
+    private String getRevision(GitLabPushRequest req) {
+        if (req.getCheckout_sha() != null) {
+            return req.getCheckout_sha();
+        }
+        GitLabPushRequest.Commit lastCommit = req.getLastCommit();
+        return lastCommit != null ? lastCommit.getId() : req.getAfter();
+    }
+
     @Override
     public DescriptorImpl getDescriptor() {
         return DescriptorImpl.get();
@@ -403,14 +800,38 @@ public class GitLabPushTrigger extends Trigger<AbstractProject<?, ?>> {
     public static class DescriptorImpl extends TriggerDescriptor {
 
         AbstractProject project;
+        private List<GitLabConnection> connections = new ArrayList<GitLabConnection>();
+        @Deprecated
         private String gitlabApiToken;
-        private String gitlabHostUrl = "";
-        private boolean ignoreCertificateErrors = false;
+        @Deprecated
+        private String gitlabHostUrl;
+        @Deprecated
+        private Boolean ignoreCertificateErrors;
+        private Integer cacheBudgetMegabytes;
         private transient final SequentialExecutionQueue queue = new SequentialExecutionQueue(Jenkins.MasterComputer.threadPoolForRemoting);
-        private transient GitLab gitlab;
 
         public DescriptorImpl() {
             load();
+            migrateConnection();
+            getCacheManager().setBudgetMegabytes(getCacheBudgetMegabytes());
+        }
+
+        /**
+         * Turns the single GitLab server of older versions into a connection named after its host.
+         */
+        private void migrateConnection() {
+            if (connections == null) {
+                connections = new ArrayList<GitLabConnection>();
+            }
+            if (gitlabHostUrl != null && !gitlabHostUrl.isEmpty() && connections.isEmpty()) {
+                String name = gitlabHostUrl.replaceFirst("^[a-zA-Z]+://", "").replaceFirst("[:/].*$", "");
+                connections.add(new GitLabConnection(name, gitlabHostUrl, gitlabApiToken,
+                                                     ignoreCertificateErrors != null && ignoreCertificateErrors));
+                gitlabHostUrl = null;
+                gitlabApiToken = null;
+                ignoreCertificateErrors = null;
+                save();
+            }
         }
 
         @Override
@@ -454,11 +875,10 @@ public class GitLabPushTrigger extends Trigger<AbstractProject<?, ?>> {
 
         @Override
         public boolean configure(StaplerRequest req, JSONObject formData) throws FormException {
-            gitlabApiToken = formData.getString("gitlabApiToken");
-            gitlabHostUrl = formData.getString("gitlabHostUrl");
-            ignoreCertificateErrors = formData.getBoolean("ignoreCertificateErrors");
+            connections = req.bindJSONToList(GitLabConnection.class, formData.get("connections"));
+            cacheBudgetMegabytes = formData.optInt("cacheBudgetMegabytes", GitLabCacheManager.DEFAULT_BUDGET_MEGABYTES);
+            getCacheManager().setBudgetMegabytes(cacheBudgetMegabytes);
             save();
-            gitlab = new GitLab();
             return super.configure(req, formData);
         }
 
@@ -470,20 +890,38 @@ public class GitLabPushTrigger extends Trigger<AbstractProject<?, ?>> {
 
             try {
                 final List<String> branchNames = new ArrayList<String>();
-                if (!gitlabHostUrl.isEmpty()) {
-                    /* TODO until java-gitlab-api v1.1.5 is released,
-                     * cannot search projects by namespace/name
-                     * For now getting project id before getting project branches */
-                    final List<GitlabProject> projects = getGitlab().instance().getProjects();
-                    for (final GitlabProject gitlabProject : projects) {
-                        if (gitlabProject.getSshUrl().equalsIgnoreCase(sourceRepository.toString())
-                            || gitlabProject.getHttpUrl().equalsIgnoreCase(sourceRepository.toString())) {
+                final GitLabConnection connection = getConnection(project);
+                if (connection != null) {
+                    final GitLabBranchCache branchCache = connection.getBranchCache();
+                    Integer projectId = branchCache.getProjectId(sourceRepository.toString());
+                    if (projectId == null) {
+                        /* TODO until java-gitlab-api v1.1.5 is released,
+                         * cannot search projects by namespace/name
+                         * For now getting project id before getting project branches */
+                        final List<GitlabProject> projects = connection.getClient().getProjects();
+                        for (final GitlabProject gitlabProject : projects) {
+                            if (gitlabProject.getSshUrl().equalsIgnoreCase(sourceRepository.toString())
+                                || gitlabProject.getHttpUrl().equalsIgnoreCase(sourceRepository.toString())) {
+                                projectId = gitlabProject.getId();
+                                branchCache.putProjectId(sourceRepository.toString(), projectId);
+                                break;
+                            }
+                        }
+                    }
+
+                    if (projectId != null) {
+                        final List<String> cached = branchCache.getBranches(projectId);
+                        if (cached != null) {
+                            branchNames.addAll(cached);
+                        } else {
                             //Get all branches of project
-                            final List<GitlabBranch> branches = getGitlab().instance().getBranches(gitlabProject);
+                            final GitlabProject gitlabProject = new GitlabProject();
+                            gitlabProject.setId(projectId);
+                            final List<GitlabBranch> branches = connection.getClient().getBranches(gitlabProject);
                             for (final GitlabBranch branch : branches) {
                                 branchNames.add(branch.getName());
                             }
-                            break;
+                            branchCache.putBranches(projectId, branchNames);
                         }
                     }
                 }
@@ -620,49 +1058,58 @@ public class GitLabPushTrigger extends Trigger<AbstractProject<?, ?>> {
             return result;
         }
 
-        public FormValidation doCheckGitlabHostUrl(@QueryParameter String value) {
-            if (value == null || value.isEmpty()) {
-                return FormValidation.error("Gitlab host URL required.");
-            }
-
-            return FormValidation.ok();
+        public List<GitLabConnection> getConnections() {
+            return connections;
         }
 
-        public FormValidation doCheckGitlabApiToken(@QueryParameter String value) {
-            if (value == null || value.isEmpty()) {
-                return FormValidation.error("API Token for Gitlab access required");
-            }
-
-            return FormValidation.ok();
+        public int getCacheBudgetMegabytes() {
+            return cacheBudgetMegabytes == null ? GitLabCacheManager.DEFAULT_BUDGET_MEGABYTES : cacheBudgetMegabytes;
         }
 
-        public FormValidation doTestConnection(@QueryParameter("gitlabHostUrl") final String hostUrl,
-                                               @QueryParameter("gitlabApiToken") final String token, @QueryParameter("ignoreCertificateErrors") final boolean ignoreCertificateErrors) throws IOException {
-            try {
-                GitLab.checkConnection(token, hostUrl, ignoreCertificateErrors);
-                return FormValidation.ok("Success");
-            } catch (IOException e) {
-                return FormValidation.error("Client error : " + e.getMessage());
-            }
+        public FormValidation doCheckCacheBudgetMegabytes(@QueryParameter final String value) {
+            return FormValidation.validatePositiveInteger(value);
         }
 
-        public GitLab getGitlab() {
-            if (gitlab == null) {
-                gitlab = new GitLab();
-            }
-            return gitlab;
+        /**
+         * @return the manager of the plugin's caches, sized by {@link #getCacheBudgetMegabytes()}
+         */
+        public GitLabCacheManager getCacheManager() {
+            return GitLabCacheManager.get();
         }
 
-        public String getGitlabApiToken() {
-            return gitlabApiToken;
+        /**
+         * @return the connection with the given name, the first one if no name is given, or null if there is
+         *         no such connection; a job never talks to another GitLab than the one it was configured for
+         */
+        @Nullable
+        public GitLabConnection getConnection(@Nullable String name) {
+            if (connections.isEmpty()) {
+                return null;
+            }
+            if (name == null || name.isEmpty()) {
+                return connections.get(0);
+            }
+            for (GitLabConnection connection : connections) {
+                if (name.equals(connection.getName())) {
+                    return connection;
+                }
+            }
+            LOGGER.log(Level.WARNING, "GitLab connection {0} is not configured", name);
+            return null;
         }
 
-        public String getGitlabHostUrl() {
-            return gitlabHostUrl;
+        @Nullable
+        private GitLabConnection getConnection(@Nullable AbstractProject<?, ?> project) {
+            final GitLabPushTrigger trigger = project == null ? null : (GitLabPushTrigger) project.getTrigger(GitLabPushTrigger.class);
+            return getConnection(trigger == null ? null : trigger.getGitLabConnection());
         }
 
-        public boolean getIgnoreCertificateErrors() {
-            return ignoreCertificateErrors;
+        public ListBoxModel doFillGitLabConnectionItems() {
+            final ListBoxModel items = new ListBoxModel();
+            for (GitLabConnection connection : connections) {
+                items.add(connection.getName());
+            }
+            return items;
         }
 
         public static DescriptorImpl get() {
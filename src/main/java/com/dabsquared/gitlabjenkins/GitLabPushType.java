@@ -0,0 +1,47 @@
+package com.dabsquared.gitlabjenkins;
+
+/**
+ * Kind of a push event, derived only from its before/after SHAs and ref
+ * so that it can be decided without binding the commit list.
+ */
+public enum GitLabPushType {
+
+    /** A new branch was pushed. */
+    CREATE,
+    /** A branch or tag was removed. */
+    DELETE,
+    /** An existing branch moved to a new commit. */
+    UPDATE,
+    /** A tag was pushed. */
+    TAG,
+    /** Nothing changed, the ref still points to the same commit. */
+    EMPTY;
+
+    public static final String NO_COMMIT = "0000000000000000000000000000000000000000";
+
+    private static final String TAG_PREFIX = "refs/tags/";
+
+    public static GitLabPushType classify(String before, String after, String ref) {
+        if (NO_COMMIT.equals(after)) {
+            return DELETE;
+        }
+        if (ref != null && ref.startsWith(TAG_PREFIX)) {
+            return TAG;
+        }
+        if (NO_COMMIT.equals(before)) {
+            return CREATE;
+        }
+        if (after != null && after.equals(before)) {
+            return EMPTY;
+        }
+        return UPDATE;
+    }
+
+    /**
+     * @return whether a push of this kind can be built at all
+     */
+    public boolean isBuildable() {
+        return this != DELETE && this != EMPTY;
+    }
+
+}
@@ -0,0 +1,194 @@
+package com.dabsquared.gitlabjenkins;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import hudson.Extension;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.Cause;
+import hudson.model.Item;
+import hudson.model.Queue;
+import hudson.model.queue.QueueListener;
+
+import jenkins.model.Jenkins;
+
+/**
+ * Index of the merge request builds on their way to a build, by job, target project, merge request and
+ * last commit, so that an event for a merge request whose build is already coming is dropped without
+ * scanning the queue.
+ *
+ * An event is indexed when the trigger accepts it, and stays indexed while it waits for its turn in the
+ * trigger and the build dispatcher; once its build is in the Jenkins queue, the queue item stands for it
+ * until it leaves the queue. Items restored from the queue after a restart are indexed on startup.
+ */
+public class GitLabQueuedMergeRequests {
+
+    private static final GitLabQueuedMergeRequests INSTANCE = new GitLabQueuedMergeRequests();
+
+    private final Map<String, Integer> queued = new HashMap<String, Integer>();
+    /** Keys of the queue items in the index, by item id. */
+    private final Map<Long, String> items = new HashMap<Long, String>();
+    /** Ids of the items that left the queue while it was being seeded. */
+    private final Set<Long> left = new HashSet<Long>();
+    private boolean seeded;
+
+    public static GitLabQueuedMergeRequests get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return true if a build of the job for the same merge request and last commit is in the queue, or
+     *         an event for it was accepted and is waiting to be scheduled
+     */
+    public boolean isQueued(String jobName, GitLabMergeRequest request) {
+        final String key = keyOf(jobName, request);
+        if (key == null) {
+            return false;
+        }
+        seed();
+        synchronized (this) {
+            return queued.containsKey(key);
+        }
+    }
+
+    /**
+     * Indexes an event accepted by the trigger of the job, unless one for the same merge request and last
+     * commit is already coming. The event must be {@link #release(String, GitLabMergeRequest) released}
+     * once its build is scheduled or it won't be.
+     *
+     * @return false if the event is a duplicate
+     */
+    public boolean accept(String jobName, GitLabMergeRequest request) {
+        final String key = keyOf(jobName, request);
+        if (key == null) {
+            return true;
+        }
+        seed();
+        synchronized (this) {
+            if (queued.containsKey(key)) {
+                return false;
+            }
+            add(key);
+            return true;
+        }
+    }
+
+    public synchronized void release(String jobName, GitLabMergeRequest request) {
+        final String key = keyOf(jobName, request);
+        if (key != null) {
+            remove(key);
+        }
+    }
+
+    public synchronized int size() {
+        return queued.size();
+    }
+
+    @Initializer(after = InitMilestone.COMPLETED)
+    public static void init() {
+        INSTANCE.seed();
+    }
+
+    /**
+     * Indexes the items in the queue once, on startup or on the first lookup if the queue was restored later.
+     * The queue listener takes this lock with the queue lock held, so the queue is read without holding it.
+     */
+    private void seed() {
+        synchronized (this) {
+            if (seeded) {
+                return;
+            }
+        }
+        final Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) {
+            return;
+        }
+        final Queue.Item[] snapshot = jenkins.getQueue().getItems();
+        synchronized (this) {
+            if (seeded) {
+                return;
+            }
+            seeded = true;
+            for (Queue.Item item : snapshot) {
+                final long id = item.getId();
+                if (!left.contains(id)) {
+                    enter(item);
+                }
+            }
+            left.clear();
+        }
+    }
+
+    private synchronized void enter(Queue.Item item) {
+        final long id = item.getId();
+        final String key = keyOf(item);
+        if (key != null && !items.containsKey(id)) {
+            items.put(id, key);
+            add(key);
+        }
+    }
+
+    private synchronized void leave(Queue.Item item) {
+        final long id = item.getId();
+        if (!seeded) {
+            left.add(id);
+        }
+        final String key = items.remove(id);
+        if (key != null) {
+            remove(key);
+        }
+    }
+
+    private void add(String key) {
+        final Integer count = queued.get(key);
+        queued.put(key, count == null ? 1 : count + 1);
+    }
+
+    private void remove(String key) {
+        final Integer count = queued.get(key);
+        if (count == null || count <= 1) {
+            queued.remove(key);
+        } else {
+            queued.put(key, count - 1);
+        }
+    }
+
+    private static String keyOf(Queue.Item item) {
+        if (!(item.task instanceof Item)) {
+            return null;
+        }
+        for (Cause cause : item.getCauses()) {
+            if (cause instanceof GitLabMergeCause) {
+                return keyOf(((Item) item.task).getFullName(), ((GitLabMergeCause) cause).getMergeRequest());
+            }
+        }
+        return null;
+    }
+
+    private static String keyOf(String jobName, GitLabMergeRequest request) {
+        final GitLabMergeRequest.ObjectAttributes attributes = request.getObjectAttribute();
+        if (attributes == null || attributes.getLastCommit() == null) {
+            return null;
+        }
+        return jobName + '|' + attributes.getTargetProjectId() + '|' + attributes.getIid() + '|' + attributes.getLastCommit().getId();
+    }
+
+    @Extension
+    public static class QueueListenerImpl extends QueueListener {
+
+        @Override
+        public void onEnterWaiting(Queue.WaitingItem wi) {
+            INSTANCE.enter(wi);
+        }
+
+        @Override
+        public void onLeft(Queue.LeftItem li) {
+            INSTANCE.leave(li);
+        }
+
+    }
+
+}
@@ -0,0 +1,328 @@
+package com.dabsquared.gitlabjenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+import org.gitlab.api.models.GitlabBranch;
+import org.gitlab.api.models.GitlabMergeRequest;
+import org.gitlab.api.models.GitlabProject;
+
+import net.sf.json.JSONObject;
+
+import hudson.Extension;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.AbstractProject;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import hudson.security.ACL;
+
+import jenkins.util.Timer;
+
+/**
+ * Catches up on webhook deliveries lost while Jenkins was down or unreachable.
+ *
+ * For every job with a GitLab trigger, the branch heads and open merge requests of its GitLab project
+ * (learned from the events it received) are compared with the heads seen by the previous run. Heads that
+ * moved and have no build in the commit index are replayed to the trigger as synthesized events, carrying the
+ * message of the head commit so that skip markers still apply. Heads the trigger already decided on when
+ * their webhook arrived, whether it built them or not, are recorded then and not replayed. Projects
+ * whose last activity didn't change since the previous run cost a single request. The first run of a job
+ * only records the heads.
+ *
+ * Runs shortly after startup, periodically, and when a GitLab connection becomes reachable again.
+ */
+@Extension
+public class GitLabReconciler extends AsyncPeriodicWork {
+
+    private static final Logger LOGGER = Logger.getLogger(GitLabReconciler.class.getName());
+
+    private static final String PREFIX = GitLabReconciler.class.getName();
+    private static final boolean DISABLED = Boolean.getBoolean(PREFIX + ".disabled");
+    private static final long PERIOD_MINUTES = Long.getLong(PREFIX + ".periodMinutes", 15L);
+    private static final long STARTUP_DELAY_SECONDS = 60;
+
+    static final String FILE_NAME = "gitlab-reconcile.json";
+    private static final String ZERO_SHA = "0000000000000000000000000000000000000000";
+
+    private static final ConcurrentMap<String, Integer> PROJECT_IDS = new ConcurrentHashMap<String, Integer>();
+    private static final AtomicBoolean REQUESTED = new AtomicBoolean();
+    private static final Object STATE_LOCK = new Object();
+
+    public GitLabReconciler() {
+        super("GitLab reconciliation");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return TimeUnit.MINUTES.toMillis(PERIOD_MINUTES);
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException, InterruptedException {
+        if (!DISABLED) {
+            reconcileAll();
+        }
+    }
+
+    /**
+     * Runs a reconciliation soon, unless one is already requested.
+     */
+    public static void requestRun() {
+        if (DISABLED || !REQUESTED.compareAndSet(false, true)) {
+            return;
+        }
+        Timer.get().schedule(new Runnable() {
+
+            public void run() {
+                REQUESTED.set(false);
+                reconcileAll();
+            }
+
+        }, STARTUP_DELAY_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void init() {
+        requestRun();
+    }
+
+    /**
+     * Remembers the GitLab project a job receives events from.
+     */
+    static void seen(AbstractProject<?, ?> job, Integer projectId) {
+        if (projectId == null || job.getRootDir() == null || projectId.equals(PROJECT_IDS.get(job.getFullName()))) {
+            return;
+        }
+        synchronized (STATE_LOCK) {
+            try {
+                final JSONObject state = load(job);
+                if (!projectId.equals(state.opt("projectId"))) {
+                    // another project, start over
+                    state.clear();
+                    state.put("projectId", projectId);
+                    save(job, state);
+                }
+                PROJECT_IDS.put(job.getFullName(), projectId);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not record the GitLab project of " + job.getFullName(), e);
+            }
+        }
+    }
+
+    /**
+     * Records a branch head the trigger received a push for, so that it isn't replayed whether it was built
+     * or filtered out.
+     */
+    static void decided(AbstractProject<?, ?> job, String branch, String sha) {
+        if (job.getRootDir() == null) {
+            return;
+        }
+        synchronized (STATE_LOCK) {
+            try {
+                final JSONObject state = load(job);
+                final JSONObject heads = state.optJSONObject("heads");
+                if (heads != null && !sha.equals(heads.optString(branch, null))) {
+                    heads.put(branch, sha);
+                    save(job, state);
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not record the head of " + branch + " for " + job.getFullName(), e);
+            }
+        }
+    }
+
+    /**
+     * @return the GitLab project the job last received events from, null if it never received any
+     */
+    static Integer getProjectId(AbstractProject<?, ?> job) throws IOException {
+        Integer projectId = PROJECT_IDS.get(job.getFullName());
+        if (projectId == null) {
+            final JSONObject state;
+            synchronized (STATE_LOCK) {
+                state = load(job);
+            }
+            if (state.has("projectId")) {
+                projectId = state.getInt("projectId");
+                PROJECT_IDS.put(job.getFullName(), projectId);
+            }
+        }
+        return projectId;
+    }
+
+    private static synchronized void reconcileAll() {
+        final Map<String, String> activities = new HashMap<String, String>();
+        for (final AbstractProject<?, ?> job : GitLabTriggerRegistry.getJobs()) {
+            final GitLabPushTrigger trigger = GitLabTriggerRegistry.get(job);
+            if (trigger == null || job.getRootDir() == null) {
+                continue;
+            }
+            ACL.impersonate(ACL.SYSTEM, new Runnable() {
+
+                public void run() {
+                    try {
+                        reconcile(job, trigger, activities);
+                    } catch (GitLabUnavailableException e) {
+                        LOGGER.log(Level.FINE, "Not reconciling {0}: {1}", new Object[] { job.getFullName(), e.getMessage() });
+                    } catch (IOException e) {
+                        LOGGER.log(Level.WARNING, "Could not reconcile " + job.getFullName() + " with GitLab", e);
+                    }
+                }
+
+            });
+        }
+    }
+
+    private static void reconcile(AbstractProject<?, ?> job, GitLabPushTrigger trigger, Map<String, String> activities) throws IOException {
+        final GitLabConnection connection = trigger.getConnection();
+        final JSONObject state = load(job);
+        if (connection == null || !state.has("projectId")) {
+            return;
+        }
+        final int projectId = state.getInt("projectId");
+
+        // the project's last activity is the cursor: nothing happened since the previous run if it didn't move
+        final String key = connection.getName() + ":" + projectId;
+        String activity = activities.get(key);
+        if (activity == null) {
+            activity = String.valueOf(connection.getClient().getProjectActivity(projectId).getLastActivityAt());
+            activities.put(key, activity);
+        }
+        if (activity.equals(state.optString("lastActivityAt", null))) {
+            return;
+        }
+        if (job.isBuilding() || job.isInQueue()) {
+            // builds of the moved heads may not be indexed yet, try again next time
+            return;
+        }
+
+        final GitlabProject project = new GitlabProject();
+        project.setId(projectId);
+        final Map<String, String> heads = new HashMap<String, String>();
+        for (GitlabBranch branch : connection.getClient().getBranches(project)) {
+            if (branch.getCommit() != null) {
+                heads.put(branch.getName(), branch.getCommit().getId());
+            }
+        }
+        final JSONObject seenHeads = state.optJSONObject("heads");
+        final JSONObject seenMergeRequests = state.optJSONObject("mergeRequests");
+        final boolean baseline = seenHeads == null;
+        final GitLabCommitIndex index = GitLabCommitIndex.of(job);
+
+        final JSONObject newHeads = new JSONObject();
+        for (Map.Entry<String, String> head : heads.entrySet()) {
+            newHeads.put(head.getKey(), head.getValue());
+            final String previous = baseline ? null : seenHeads.optString(head.getKey(), null);
+            if (baseline || head.getValue().equals(previous) || !index.find(job, head.getValue(), false).isEmpty()) {
+                continue;
+            }
+            LOGGER.log(Level.INFO, "Replaying missed push of {0} to {1} for {2}", new Object[] { head.getValue(), head.getKey(), job.getFullName() });
+            trigger.onPost(createPush(connection, projectId, head.getKey(), previous, head.getValue(), "GitLab reconciliation"));
+        }
+
+        final JSONObject newMergeRequests = new JSONObject();
+        if (trigger.getTriggerOnMergeRequest()) {
+            final List<GitlabMergeRequest> mergeRequests = connection.getClient().getMergeRequests(projectId);
+            for (GitlabMergeRequest mr : mergeRequests) {
+                // heads of merge requests from forks are not listed with the project's branches
+                final String head = mr.getSourceProjectId() == null || mr.getSourceProjectId() == projectId ? heads.get(mr.getSourceBranch()) : null;
+                if (mr.isClosed() || mr.isMerged() || head == null) {
+                    continue;
+                }
+                final String iid = String.valueOf(mr.getIid());
+                newMergeRequests.put(iid, head);
+                if (baseline || seenMergeRequests == null || head.equals(seenMergeRequests.optString(iid, null))
+                        || !index.find(job, head, true).isEmpty()) {
+                    continue;
+                }
+                LOGGER.log(Level.INFO, "Replaying missed update of merge request !{0} for {1}", new Object[] { iid, job.getFullName() });
+                trigger.onPost(createMergeRequest(projectId, mr, head));
+            }
+        }
+
+        state.put("lastActivityAt", activity);
+        state.put("mergeRequests", newMergeRequests);
+        synchronized (STATE_LOCK) {
+            final JSONObject decidedHeads = load(job).optJSONObject("heads");
+            if (decidedHeads != null && !baseline) {
+                for (Object branch : decidedHeads.keySet()) {
+                    // decided by a webhook since the heads were listed
+                    final String head = decidedHeads.getString(String.valueOf(branch));
+                    if (newHeads.has(String.valueOf(branch)) && !head.equals(seenHeads.optString(String.valueOf(branch), null))) {
+                        newHeads.put(String.valueOf(branch), head);
+                    }
+                }
+            }
+            state.put("heads", newHeads);
+            save(job, state);
+        }
+    }
+
+    /**
+     * Synthesizes the push of a branch head, with the head commit so that skip markers apply to it.
+     */
+    static GitLabPushRequest createPush(GitLabConnection connection, int projectId, String branch, String before, String after,
+                                        String userName) throws IOException {
+        final GitLabCommit head = connection.getClient().getCommit(projectId, after);
+        final GitLabPushRequest.Commit commit = new GitLabPushRequest.Commit();
+        commit.setId(after);
+        commit.setMessage(head.getMessage());
+        final GitLabPushRequest push = new GitLabPushRequest();
+        push.setCommits(Collections.singletonList(commit));
+        push.setProject_id(projectId);
+        push.setRef("refs/heads/" + branch);
+        push.setBefore(before == null ? ZERO_SHA : before);
+        push.setAfter(after);
+        push.setCheckout_sha(after);
+        push.setUser_name(userName);
+        return push;
+    }
+
+    private static GitLabMergeRequest createMergeRequest(int projectId, GitlabMergeRequest mr, String head) {
+        final GitLabMergeRequest request = new GitLabMergeRequest();
+        request.setObject_kind(GitLabMergeRequest.KIND);
+        final GitLabMergeRequest.ObjectAttributes attributes = new GitLabMergeRequest.ObjectAttributes();
+        attributes.setId(mr.getId());
+        attributes.setIid(mr.getIid());
+        attributes.setTitle(mr.getTitle());
+        attributes.setDescription(mr.getDescription());
+        attributes.setState(mr.getState());
+        attributes.setSourceBranch(mr.getSourceBranch());
+        attributes.setSourceProjectId(mr.getSourceProjectId());
+        attributes.setTargetBranch(mr.getTargetBranch());
+        attributes.setTargetProjectId(projectId);
+        if (mr.getAuthor() != null) {
+            attributes.setAuthorId(mr.getAuthor().getId());
+        }
+        if (mr.getAssignee() != null) {
+            attributes.setAssigneeId(mr.getAssignee().getId());
+        }
+        final GitLabMergeRequest.LastCommit lastCommit = new GitLabMergeRequest.LastCommit();
+        lastCommit.setId(head);
+        attributes.setLastCommit(lastCommit);
+        request.setObjectAttribute(attributes);
+        request.setDetails(mr);
+        return request;
+    }
+
+    private static JSONObject load(AbstractProject<?, ?> job) throws IOException {
+        final File file = new File(job.getRootDir(), FILE_NAME);
+        return file.exists() ? JSONObject.fromObject(FileUtils.readFileToString(file, "UTF-8")) : new JSONObject();
+    }
+
+    private static void save(AbstractProject<?, ?> job, JSONObject state) throws IOException {
+        FileUtils.writeStringToFile(new File(job.getRootDir(), FILE_NAME), state.toString(), "UTF-8");
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.dabsquared.gitlabjenkins;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.util.AntPathMatcher;
+
+import com.google.common.base.Splitter;
+
+import hudson.Util;
+
+/**
+ * Include/exclude filter over branch or tag names, compiled once from the comma-separated specs
+ * of a trigger. Plain names are matched through a hash lookup, only wildcard patterns go through
+ * {@link AntPathMatcher}.
+ */
+public class GitLabRefFilter {
+
+    private static final AntPathMatcher MATCHER = new AntPathMatcher();
+
+    private final Set<String> includeNames = new HashSet<String>();
+    private final List<String> includePatterns = new ArrayList<String>();
+    private final Set<String> excludeNames = new HashSet<String>();
+    private final List<String> excludePatterns = new ArrayList<String>();
+    private final boolean acceptAll;
+
+    private GitLabRefFilter(String includeSpec, String excludeSpec) {
+        split(includeSpec, includeNames, includePatterns);
+        split(excludeSpec, excludeNames, excludePatterns);
+        acceptAll = includeNames.isEmpty() && includePatterns.isEmpty() && excludeNames.isEmpty() && excludePatterns.isEmpty();
+    }
+
+    public static GitLabRefFilter compile(String includeSpec, String excludeSpec) {
+        return new GitLabRefFilter(includeSpec, excludeSpec);
+    }
+
+    public boolean isAllowed(String name) {
+        if (acceptAll) {
+            return true;
+        }
+        if (excludeNames.contains(name) || matchesAny(excludePatterns, name)) {
+            return false;
+        }
+        return includeNames.contains(name) || matchesAny(includePatterns, name);
+    }
+
+    private static boolean matchesAny(List<String> patterns, String name) {
+        for (String pattern : patterns) {
+            if (MATCHER.match(pattern, name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void split(String spec, Set<String> names, List<String> patterns) {
+        for (String entry : Splitter.on(',').omitEmptyStrings().trimResults().split(Util.fixNull(spec))) {
+            if (MATCHER.isPattern(entry)) {
+                patterns.add(entry);
+            } else {
+                names.add(entry);
+            }
+        }
+    }
+
+}
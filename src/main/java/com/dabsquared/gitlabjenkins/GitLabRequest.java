@@ -14,6 +14,9 @@ import com.google.gson.JsonDeserializationContext;
 import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSerializer;
 
 public class GitLabRequest {
 
@@ -38,7 +41,29 @@ public class GitLabRequest {
     private static final String[] DATE_FORMATS = new String[] {
         "yyyy-MM-dd HH:mm:ss Z", "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'" };
 
-    private static class DateSerializer implements JsonDeserializer<Date> {
+    /** Journal entry of the accepted event, checkpointed once its build is scheduled. */
+    private transient long journalEntry;
+
+    public long getJournalEntry() {
+        return journalEntry;
+    }
+
+    public void setJournalEntry(long journalEntry) {
+        this.journalEntry = journalEntry;
+    }
+
+    /**
+     * @return the request as a webhook payload, which can be bound again
+     */
+    public String toJson() {
+        return Builder.INSTANCE.get().toJson(this);
+    }
+
+    private static class DateSerializer implements JsonDeserializer<Date>, JsonSerializer<Date> {
+
+        public JsonElement serialize(Date date, Type typeOfSrc, JsonSerializationContext context) {
+            return new JsonPrimitive(new SimpleDateFormat(DATE_FORMATS[0], Locale.US).format(date));
+        }
 
         public Date deserialize(JsonElement jsonElement, Type typeOF,
                                 JsonDeserializationContext context) throws JsonParseException {
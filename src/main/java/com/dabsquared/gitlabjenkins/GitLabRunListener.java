@@ -1,24 +1,44 @@
 package com.dabsquared.gitlabjenkins;
 
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
 import javax.annotation.Nonnull;
 
 import hudson.Extension;
 import hudson.model.AbstractBuild;
 import hudson.model.TaskListener;
 import hudson.model.listeners.RunListener;
-import hudson.triggers.Trigger;
 
 /**
  * RunListener that will be called when a build starts and completes.
- * Will lookup GitLabPushTrigger and call onStarted and onCompleted methods
- * in order to have access to the build and set properties.
+ * Keeps the build summaries, commit index, status cache and status stream up to date
+ * (which costs jobs that never used them a few map lookups and file existence checks), and
+ * calls onStarted and onCompleted of the job's GitLabPushTrigger, found in the
+ * {@link GitLabTriggerRegistry}, in order to have access to the build and set properties.
  */
 @Extension
 public class GitLabRunListener extends RunListener<AbstractBuild> {
 
+    private static final Logger LOGGER = Logger.getLogger(GitLabRunListener.class.getName());
+
     @Override
     public void onCompleted(AbstractBuild abstractBuild, @Nonnull TaskListener listener) {
-        GitLabPushTrigger trig = getTrigger(abstractBuild);
+        try {
+            GitLabBuildSummary.onCompleted(abstractBuild);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not write the GitLab summary of " + abstractBuild.getFullDisplayName(), e);
+        }
+        try {
+            GitLabCommitIndex.onCompleted(abstractBuild);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not add " + abstractBuild.getFullDisplayName() + " to the commit index", e);
+        }
+        GitLabStatusStream.get().publishResult(abstractBuild);
+        GitLabBuildDispatcher.get().onFinished(abstractBuild.getCauses());
+
+        GitLabPushTrigger trig = GitLabTriggerRegistry.get(abstractBuild.getProject());
         if (trig != null) {
             trig.onCompleted(abstractBuild);
         }
@@ -27,19 +47,22 @@ public class GitLabRunListener extends RunListener<AbstractBuild> {
 
     @Override
     public void onStarted(AbstractBuild abstractBuild, TaskListener listener) {
-        GitLabPushTrigger trig = getTrigger(abstractBuild);
+        GitLabStatusCache.get().invalidate(abstractBuild.getProject().getFullName());
+        GitLabCommitIndex.onStarted(abstractBuild);
+        GitLabStatusStream.get().publish(abstractBuild, "running");
+
+        GitLabPushTrigger trig = GitLabTriggerRegistry.get(abstractBuild.getProject());
         if (trig != null) {
             trig.onStarted(abstractBuild);
         }
         super.onStarted(abstractBuild, listener);
     }
 
-    private GitLabPushTrigger getTrigger(AbstractBuild abstractBuild) {
-        Trigger trig = abstractBuild.getProject().getTrigger(GitLabPushTrigger.class);
-        if (trig != null && trig instanceof GitLabPushTrigger) {
-            return (GitLabPushTrigger) trig;
-        }
-        return null;
+    @Override
+    public void onDeleted(AbstractBuild abstractBuild) {
+        GitLabStatusCache.get().invalidate(abstractBuild.getProject().getFullName());
+        GitLabBuildSummary.onDeleted(abstractBuild);
+        super.onDeleted(abstractBuild);
     }
 
 }
@@ -0,0 +1,83 @@
+package com.dabsquared.gitlabjenkins;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import hudson.Util;
+
+/**
+ * Remembers the status.json answers about finished builds, which only change when the job builds the
+ * same commit again or a build is deleted; both drop the job's entries.
+ *
+ * Entries are keyed by the job's version, which is bumped to drop them all at once; the old entries
+ * are never hit again and age out of the cache. Jobs whose status was never cached have no version.
+ */
+public class GitLabStatusCache {
+
+    private static final GitLabStatusCache INSTANCE = new GitLabStatusCache();
+
+    private final GitLabCacheManager.NamedCache<String, Entry> entries = GitLabCacheManager.get().register("status", 4);
+    private final ConcurrentMap<String, AtomicLong> versions = new ConcurrentHashMap<String, AtomicLong>();
+
+    public static GitLabStatusCache get() {
+        return INSTANCE;
+    }
+
+    public Entry get(String jobName, String sha) {
+        final AtomicLong version = versions.get(jobName);
+        return version == null ? null : entries.get(key(jobName, version, sha));
+    }
+
+    public void put(String jobName, String sha, Entry entry) {
+        AtomicLong version = versions.get(jobName);
+        if (version == null) {
+            final AtomicLong created = new AtomicLong();
+            version = versions.putIfAbsent(jobName, created);
+            if (version == null) {
+                version = created;
+            }
+        }
+        entries.put(key(jobName, version, sha), entry);
+    }
+
+    public void invalidate(String jobName) {
+        final AtomicLong version = versions.get(jobName);
+        if (version != null) {
+            version.incrementAndGet();
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static String key(String jobName, AtomicLong version, String sha) {
+        return jobName + '|' + version.get() + '|' + sha;
+    }
+
+    public static final class Entry implements GitLabCacheManager.Sized {
+
+        private final String body;
+        private final String etag;
+
+        public Entry(String body) {
+            this.body = body;
+            this.etag = '"' + Util.getDigestOf(body) + '"';
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        public String getETag() {
+            return etag;
+        }
+
+        public long getSize() {
+            return 80 + 2L * (body.length() + etag.length());
+        }
+
+    }
+
+}
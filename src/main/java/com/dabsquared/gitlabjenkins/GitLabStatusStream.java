@@ -0,0 +1,350 @@
+package com.dabsquared.gitlabjenkins;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletResponse;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Sets;
+
+import net.sf.json.JSONObject;
+
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.model.Result;
+import hudson.plugins.git.util.BuildData;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+/**
+ * Streams build status changes of a job as server-sent events, optionally narrowed to a branch
+ * ({@code ref}) or a comma separated list of commits ({@code sha1}).
+ *
+ * Events are handed to subscribers without blocking the build: each subscriber has a bounded buffer,
+ * and a subscriber that falls behind gets a {@code reset} event telling it to fetch status.json again.
+ * Subscribers need read access to the job, each client may only open a few streams, and a connection
+ * lasts a limited time; clients reconnect on their own once a stream ends.
+ *
+ * On Jenkins 1.568, core's filter chain doesn't support asynchronous requests, so every subscriber holds
+ * a request thread while it waits and at most {@code maxBlockingSubscribers} (100) are accepted. Only on
+ * a core whose filter chain supports them is the request thread released, with a single writer thread
+ * serving all subscribers.
+ */
+public class GitLabStatusStream {
+
+    private static final Logger LOGGER = Logger.getLogger(GitLabStatusStream.class.getName());
+
+    private static final String PREFIX = GitLabStatusStream.class.getName();
+    private static final int MAX_SUBSCRIBERS = Integer.getInteger(PREFIX + ".maxSubscribers", 10000);
+    private static final int MAX_BLOCKING_SUBSCRIBERS = Integer.getInteger(PREFIX + ".maxBlockingSubscribers", 100);
+    private static final int MAX_SUBSCRIBERS_PER_CLIENT = Integer.getInteger(PREFIX + ".maxSubscribersPerClient", 4);
+    private static final int BUFFER_SIZE = Integer.getInteger(PREFIX + ".bufferSize", 64);
+    private static final long HEARTBEAT_SECONDS = Long.getLong(PREFIX + ".heartbeatSeconds", 15L);
+    private static final long MAX_CONNECTION_MINUTES = Long.getLong(PREFIX + ".maxConnectionMinutes", 10L);
+
+    private static final GitLabStatusStream INSTANCE = new GitLabStatusStream();
+
+    private final CopyOnWriteArrayList<Subscriber> subscribers = new CopyOnWriteArrayList<Subscriber>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicBoolean writerStarted = new AtomicBoolean();
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(
+            new NamingThreadFactory(new DaemonThreadFactory(), "GitLab status stream writer"));
+    private final Runnable drain = new Runnable() {
+
+        public void run() {
+            writeAll();
+        }
+
+    };
+
+    public static GitLabStatusStream get() {
+        return INSTANCE;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Sends the new status of a build to the subscribers interested in it.
+     */
+    public void publish(AbstractBuild<?, ?> build, String status) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        final String jobName = build.getProject().getFullName();
+        final String[] commit = getCommit(build);
+        final JSONObject event = new JSONObject();
+        event.put("job", jobName);
+        event.put("id", build.getNumber());
+        event.put("sha", commit[0]);
+        event.put("ref", commit[1]);
+        event.put("status", status);
+        final String message = "id: " + sequence.incrementAndGet() + "\nevent: status\ndata: " + event.toString() + "\n\n";
+        boolean async = false;
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.accepts(jobName, commit[0], commit[1])) {
+                subscriber.offer(message);
+                async |= subscriber.async != null;
+            }
+        }
+        if (async) {
+            writer.execute(drain);
+        }
+    }
+
+    public void publishResult(AbstractBuild<?, ?> build) {
+        publish(build, build.getResult() == Result.SUCCESS ? "success" : "failed");
+    }
+
+    /**
+     * Serves the stream until the client goes away or the connection reaches its maximum lifetime.
+     */
+    public void serve(AbstractProject<?, ?> project, StaplerRequest req, StaplerResponse rsp) throws IOException {
+        project.checkPermission(Item.READ);
+        final boolean async = isAsyncSupported(req);
+        final Subscriber subscriber = new Subscriber(project.getFullName(), req.getParameter("ref"), req.getParameter("sha1"), req.getRemoteAddr(), async);
+        if (!register(subscriber)) {
+            rsp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many status subscribers");
+            return;
+        }
+        boolean handedOff = false;
+        try {
+            rsp.setContentType("text/event-stream;charset=UTF-8");
+            rsp.setHeader("Cache-Control", "no-cache");
+            rsp.setHeader("X-Accel-Buffering", "no");
+            final PrintWriter w = rsp.getWriter();
+            w.write("retry: 5000\n\n");
+            w.flush();
+
+            final long end = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(MAX_CONNECTION_MINUTES);
+            if (async) {
+                serveAsync(subscriber, req.startAsync(), w, end);
+                handedOff = true;
+                return;
+            }
+            while (System.currentTimeMillis() < end && !w.checkError()) {
+                final String message = subscriber.events.poll(HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+                if (!write(subscriber, w, message)) {
+                    w.write(": heartbeat\n\n");
+                }
+                w.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (!handedOff) {
+                subscribers.remove(subscriber);
+                LOGGER.log(Level.FINE, "Status subscriber for {0} left", subscriber.jobName);
+            }
+        }
+    }
+
+    /**
+     * Leaves the subscriber to the writer thread, which ends the request when the client goes away or the
+     * connection reaches its maximum lifetime.
+     */
+    private void serveAsync(final Subscriber subscriber, final AsyncContext context, PrintWriter w, long end) {
+        context.setTimeout(0);
+        context.addListener(new AsyncListener() {
+
+            public void onComplete(AsyncEvent event) {
+                subscribers.remove(subscriber);
+                LOGGER.log(Level.FINE, "Status subscriber for {0} left", subscriber.jobName);
+            }
+
+            public void onTimeout(AsyncEvent event) {
+                subscribers.remove(subscriber);
+            }
+
+            public void onError(AsyncEvent event) {
+                subscribers.remove(subscriber);
+            }
+
+            public void onStartAsync(AsyncEvent event) {
+            }
+
+        });
+        subscriber.writer = w;
+        subscriber.end = end;
+        subscriber.lastWrite = System.currentTimeMillis();
+        subscriber.async = context;
+        if (writerStarted.compareAndSet(false, true)) {
+            writer.scheduleWithFixedDelay(drain, 1, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Writes pending events, heartbeats and the end of streams of all asynchronous subscribers; only
+     * ever runs on the writer thread.
+     */
+    private void writeAll() {
+        final long now = System.currentTimeMillis();
+        for (Subscriber subscriber : subscribers) {
+            final AsyncContext context = subscriber.async;
+            if (context == null) {
+                continue;
+            }
+            final PrintWriter w = subscriber.writer;
+            try {
+                boolean written = false;
+                for (String message = subscriber.events.poll(); message != null || subscriber.overflowed; message = subscriber.events.poll()) {
+                    written |= write(subscriber, w, message);
+                }
+                if (written) {
+                    subscriber.lastWrite = now;
+                } else if (now - subscriber.lastWrite >= TimeUnit.SECONDS.toMillis(HEARTBEAT_SECONDS)) {
+                    w.write(": heartbeat\n\n");
+                    subscriber.lastWrite = now;
+                    written = true;
+                }
+                if (written) {
+                    w.flush();
+                }
+                if (now >= subscriber.end || w.checkError()) {
+                    subscribers.remove(subscriber);
+                    context.complete();
+                }
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.FINE, "Status subscriber for " + subscriber.jobName + " failed", e);
+                subscribers.remove(subscriber);
+                try {
+                    context.complete();
+                } catch (IllegalStateException ignored) {
+                    // already completed by the container
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes an event, or the reset event if the subscriber fell behind.
+     *
+     * @return whether anything was written
+     */
+    private static boolean write(Subscriber subscriber, PrintWriter w, String message) {
+        if (subscriber.overflowed) {
+            subscriber.overflowed = false;
+            subscriber.events.clear();
+            w.write("event: reset\ndata: {}\n\n");
+            return true;
+        }
+        if (message == null) {
+            return false;
+        }
+        w.write(message);
+        return true;
+    }
+
+    /**
+     * @return whether the request can be served asynchronously; it can't in containers older than Servlet 3.0
+     *         or when a filter in front of the plugin doesn't support asynchronous requests, as on Jenkins 1.568
+     */
+    private static boolean isAsyncSupported(StaplerRequest req) {
+        try {
+            return req.isAsyncSupported();
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    private synchronized boolean register(Subscriber subscriber) {
+        int all = 0;
+        int blocking = 0;
+        int sameClient = 0;
+        for (Subscriber other : subscribers) {
+            all++;
+            if (!other.asynchronous) {
+                blocking++;
+            }
+            if (other.client.equals(subscriber.client)) {
+                sameClient++;
+            }
+        }
+        if (all >= MAX_SUBSCRIBERS || !subscriber.asynchronous && blocking >= MAX_BLOCKING_SUBSCRIBERS || sameClient >= MAX_SUBSCRIBERS_PER_CLIENT) {
+            return false;
+        }
+        subscribers.add(subscriber);
+        return true;
+    }
+
+    /**
+     * @return the commit and branch of the build, taken from its cause before the checkout and from
+     *         the git data afterwards
+     */
+    private static String[] getCommit(AbstractBuild<?, ?> build) {
+        final GitLabPushCause pushCause = build.getCause(GitLabPushCause.class);
+        if (pushCause != null && pushCause.getCommit() != null) {
+            return new String[] { pushCause.getCommit(), pushCause.getRef() };
+        }
+        final GitLabMergeCause mergeCause = build.getCause(GitLabMergeCause.class);
+        if (mergeCause != null && mergeCause.getMergeRequest().getObjectAttribute().getLastCommit() != null) {
+            final GitLabMergeRequest.ObjectAttributes attributes = mergeCause.getMergeRequest().getObjectAttribute();
+            return new String[] { attributes.getLastCommit().getId(), attributes.getSourceBranch() };
+        }
+        final BuildData data = build.getAction(BuildData.class);
+        if (data != null && data.getLastBuiltRevision() != null) {
+            final String branch = data.getLastBuiltRevision().getBranches().isEmpty()
+                    ? null : data.getLastBuiltRevision().getBranches().iterator().next().getName().replaceFirst("^[^/]+/", "");
+            return new String[] { data.getLastBuiltRevision().getSha1String(), branch };
+        }
+        return new String[] { null, null };
+    }
+
+    private static final class Subscriber {
+
+        private final String jobName;
+        private final String ref;
+        private final Set<String> shas;
+        private final String client;
+        private final boolean asynchronous;
+        private final BlockingQueue<String> events = new ArrayBlockingQueue<String>(BUFFER_SIZE);
+        private volatile boolean overflowed;
+        /** Set once the subscriber is served by the writer thread. */
+        private volatile AsyncContext async;
+        private volatile PrintWriter writer;
+        private volatile long end;
+        private long lastWrite;
+
+        private Subscriber(String jobName, String ref, String shas, String client, boolean asynchronous) {
+            this.jobName = jobName;
+            this.client = client == null ? "" : client;
+            this.asynchronous = asynchronous;
+            this.ref = ref == null || ref.isEmpty() ? null : ref;
+            this.shas = shas == null || shas.isEmpty() ? null : Sets.newHashSet(Splitter.on(',').omitEmptyStrings().trimResults().split(shas));
+        }
+
+        private boolean accepts(String jobName, String sha, String ref) {
+            return this.jobName.equals(jobName)
+                    && (this.ref == null || this.ref.equals(ref))
+                    && (this.shas == null || this.shas.contains(sha));
+        }
+
+        private void offer(String message) {
+            if (!events.offer(message)) {
+                overflowed = true;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.dabsquared.gitlabjenkins;
+
+import org.codehaus.jackson.annotate.JsonIgnoreProperties;
+
+/**
+ * Entry of a repository tree listing of the GitLab API.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class GitLabTreeEntry {
+
+    public static final String URL = "/repository/tree";
+
+    private String id;
+    private String name;
+    private String type;
+    private String mode;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+
+}
@@ -0,0 +1,186 @@
+package com.dabsquared.gitlabjenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+
+import net.sf.json.JSONObject;
+
+import hudson.Util;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Action;
+import hudson.model.InvisibleAction;
+
+/**
+ * Successful builds by the content they built, so that a push of a commit whose tree already passed
+ * with the same job configuration (e.g. a merge commit of an already built branch) needn't be built again.
+ *
+ * A tree is identified by the entries at its root as listed by GitLab: names, modes and object ids,
+ * which are content hashes of everything below. The results are kept in the job's {@code gitlab-trees.json}.
+ * The job configuration a build ran with is captured when it starts, and a build whose result was reused
+ * lists the commits it stood in for on its page.
+ */
+public class GitLabTreeResults {
+
+    static final String FILE_NAME = "gitlab-trees.json";
+
+    private static final int MAX_RESULTS = 500;
+
+    private static final GitLabTreeResults INSTANCE = new GitLabTreeResults();
+
+    public static GitLabTreeResults get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Remembers the job configuration the starting build runs with.
+     */
+    public void recordStarted(AbstractBuild<?, ?> build) throws IOException {
+        build.addAction(new ConfigDigest(digestOf(build.getProject())));
+    }
+
+    /**
+     * Records the successful build of the given commit, unless it started before its configuration was captured.
+     */
+    public void recordPassed(AbstractBuild<?, ?> build, GitLabConnection connection, Integer projectId, String sha) throws IOException {
+        final ConfigDigest config = build.getAction(ConfigDigest.class);
+        if (config == null) {
+            return;
+        }
+        final AbstractProject<?, ?> job = build.getProject();
+        final int buildNumber = build.getNumber();
+        final String key = keyOf(config.digest, connection, projectId, sha);
+        synchronized (this) {
+            final File file = new File(job.getRootDir(), FILE_NAME);
+            final JSONObject results = file.exists() ? JSONObject.fromObject(FileUtils.readFileToString(file, "UTF-8")) : new JSONObject();
+            results.remove(key);
+            results.put(key, buildNumber);
+            final List<Object> keys = new ArrayList<Object>(results.keySet());
+            for (int i = 0; i < keys.size() - MAX_RESULTS; i++) {
+                results.remove(keys.get(i));
+            }
+            FileUtils.writeStringToFile(file, results.toString(), "UTF-8");
+        }
+    }
+
+    /**
+     * @return the number of a successful build of the same tree and job configuration, null if there is none
+     */
+    public Integer findPassed(AbstractProject<?, ?> job, GitLabConnection connection, Integer projectId, String sha) throws IOException {
+        final File file = new File(job.getRootDir(), FILE_NAME);
+        if (!file.exists()) {
+            return null;
+        }
+        final String key = keyOf(digestOf(job), connection, projectId, sha);
+        final JSONObject results;
+        synchronized (this) {
+            results = JSONObject.fromObject(FileUtils.readFileToString(file, "UTF-8"));
+        }
+        if (!results.has(key)) {
+            return null;
+        }
+        final int number = results.getInt(key);
+        if (job.getBuildByNumber(number) == null) {
+            // deleted since
+            return null;
+        }
+        return number;
+    }
+
+    /**
+     * Lists the commit on the page of the build whose result it reused.
+     */
+    public void recordReused(AbstractProject<?, ?> job, int number, String sha) throws IOException {
+        final AbstractBuild<?, ?> build = job.getBuildByNumber(number);
+        if (build == null) {
+            return;
+        }
+        synchronized (build) {
+            Reused reused = build.getAction(Reused.class);
+            if (reused == null) {
+                reused = new Reused();
+                build.addAction(reused);
+            }
+            reused.commits.add(sha);
+            build.save();
+        }
+    }
+
+    private static String digestOf(AbstractProject<?, ?> job) throws IOException {
+        return Util.getDigestOf(job.getConfigFile().asString());
+    }
+
+    private static String keyOf(String configDigest, GitLabConnection connection, Integer projectId, String sha) throws IOException {
+        final List<GitLabTreeEntry> entries = new ArrayList<GitLabTreeEntry>(connection.getClient().getTree(projectId, sha));
+        Collections.sort(entries, new Comparator<GitLabTreeEntry>() {
+
+            public int compare(GitLabTreeEntry a, GitLabTreeEntry b) {
+                return a.getName().compareTo(b.getName());
+            }
+
+        });
+        final StringBuilder tree = new StringBuilder();
+        for (GitLabTreeEntry entry : entries) {
+            tree.append(entry.getMode()).append(' ').append(entry.getType()).append(' ').append(entry.getId()).append(' ')
+                    .append(entry.getName()).append('\n');
+        }
+        return configDigest + '|' + sha1(tree.toString());
+    }
+
+    private static String sha1(String s) {
+        try {
+            return Util.toHexString(MessageDigest.getInstance("SHA-1").digest(s.getBytes("UTF-8")));
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Digest of the job configuration a build ran with.
+     */
+    public static final class ConfigDigest extends InvisibleAction {
+
+        private final String digest;
+
+        ConfigDigest(String digest) {
+            this.digest = digest;
+        }
+
+    }
+
+    /**
+     * Commits whose pushes weren't built because this build passed with the same tree.
+     */
+    public static final class Reused implements Action {
+
+        private final List<String> commits = new ArrayList<String>();
+
+        public synchronized List<String> getCommits() {
+            return new ArrayList<String>(commits);
+        }
+
+        public String getIconFileName() {
+            return null;
+        }
+
+        public String getDisplayName() {
+            return "Reused GitLab result";
+        }
+
+        public String getUrlName() {
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,63 @@
+package com.dabsquared.gitlabjenkins;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.model.listeners.ItemListener;
+
+/**
+ * The jobs that have a {@link GitLabPushTrigger}, maintained as triggers start and stop, so that
+ * listeners called for every build can tell GitLab jobs apart without looking at the job's triggers.
+ */
+public class GitLabTriggerRegistry {
+
+    private static final ConcurrentMap<AbstractProject<?, ?>, GitLabPushTrigger> TRIGGERS = new ConcurrentHashMap<AbstractProject<?, ?>, GitLabPushTrigger>();
+
+    private GitLabTriggerRegistry() {
+    }
+
+    /**
+     * @return the trigger of the job, null if it has none
+     */
+    public static GitLabPushTrigger get(AbstractProject<?, ?> job) {
+        return TRIGGERS.get(job);
+    }
+
+    /**
+     * @return the jobs that have a trigger
+     */
+    public static List<AbstractProject<?, ?>> getJobs() {
+        return new ArrayList<AbstractProject<?, ?>>(TRIGGERS.keySet());
+    }
+
+    public static int size() {
+        return TRIGGERS.size();
+    }
+
+    static void register(AbstractProject<?, ?> job, GitLabPushTrigger trigger) {
+        TRIGGERS.put(job, trigger);
+    }
+
+    static void unregister(AbstractProject<?, ?> job, GitLabPushTrigger trigger) {
+        // a reconfigured job may already have started its new trigger
+        TRIGGERS.remove(job, trigger);
+    }
+
+    @Extension
+    public static class ItemListenerImpl extends ItemListener {
+
+        @Override
+        public void onDeleted(Item item) {
+            if (item instanceof AbstractProject) {
+                TRIGGERS.remove(item);
+            }
+        }
+
+    }
+
+}
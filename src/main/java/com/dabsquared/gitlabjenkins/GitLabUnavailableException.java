@@ -0,0 +1,16 @@
+package com.dabsquared.gitlabjenkins;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of calling GitLab while {@link GitLabApiGuard} holds calls back.
+ */
+public class GitLabUnavailableException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public GitLabUnavailableException(String message) {
+        super(message);
+    }
+
+}
@@ -29,9 +29,7 @@ import net.sf.json.JSONObject;
 import hudson.Extension;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
-import hudson.model.BallColor;
-import hudson.model.Item;
-import hudson.model.ItemGroup;
+import hudson.model.Result;
 import hudson.model.UnprotectedRootAction;
 import hudson.plugins.git.Branch;
 import hudson.plugins.git.GitSCM;
@@ -56,6 +54,8 @@ public class GitLabWebHook implements UnprotectedRootAction {
 
     public static final String WEBHOOK_URL = "project";
 
+    private static final int PENDING_STATUS_MAX_AGE = Integer.getInteger(GitLabWebHook.class.getName() + ".pendingStatusMaxAge", 5);
+
     public String getIconFileName() {
         return null;
     }
@@ -69,28 +69,20 @@ public class GitLabWebHook implements UnprotectedRootAction {
     }
 
     public void getDynamic(final String projectName, final StaplerRequest req, StaplerResponse res) {
-        LOGGER.log(Level.WARNING, "WebHook called.");
-        final Iterator<String> restOfPathParts = Splitter.on('/').omitEmptyStrings().split(req.getRestOfPath()).iterator();
-        final AbstractProject<?, ?>[] projectHolder = new AbstractProject<?, ?>[] { null };
-        ACL.impersonate(ACL.SYSTEM, new Runnable() {
-
-            public void run() {
-                final Jenkins jenkins = Jenkins.getInstance();
-                if (jenkins != null) {
-                    Item item = jenkins.getItemByFullName(projectName);
-                    while (item instanceof ItemGroup<?> && !(item instanceof AbstractProject<?, ?>) && restOfPathParts.hasNext()) {
-                        item = jenkins.getItem(restOfPathParts.next(), (ItemGroup<?>) item);
-                    }
-                    if (item instanceof AbstractProject<?, ?>) {
-                        projectHolder[0] = (AbstractProject<?, ?>) item;
-                    }
-                }
-            }
-
-        });
+        GitLabWebHookDiagnostics.begin(req);
+        try {
+            handle(projectName, req, res);
+        } finally {
+            GitLabWebHookDiagnostics.end();
+        }
+    }
 
-        final AbstractProject<?, ?> project = projectHolder[0];
+    private void handle(final String projectName, final StaplerRequest req, StaplerResponse res) {
+        LOGGER.log(Level.FINE, "WebHook called for {0}", projectName);
+        final Iterator<String> restOfPathParts = Splitter.on('/').omitEmptyStrings().split(req.getRestOfPath()).iterator();
+        final AbstractProject<?, ?> project = GitLabProjectResolver.get().resolve(projectName, restOfPathParts);
         if (project == null) {
+            GitLabWebHookDiagnostics.note(LOGGER, Level.FINE, "No job found for {0}", projectName);
             throw HttpResponses.notFound();
         }
 
@@ -110,6 +102,7 @@ public class GitLabWebHook implements UnprotectedRootAction {
         }
 
         String theString = writer.toString();
+        GitLabWebHookDiagnostics.payload(theString);
 
         if (paths.size() == 0) {
             if (req.getParameter("ref") != null) {
@@ -142,11 +135,17 @@ public class GitLabWebHook implements UnprotectedRootAction {
                 e.printStackTrace();
                 throw HttpResponses.error(500, "Could not generate an image.");
             }
+        } else if (lastPath.equals("events")) {
+            try {
+                GitLabStatusStream.get().serve(project, req, res);
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Status stream closed", e);
+            }
         } else if ((firstPath.equals("commits") || firstPath.equals("builds")) && !lastPath.equals("status.json")) {
             AbstractBuild build = this.getBuildBySHA1(project, lastPath, true);
             redirectToBuildPage(res, build);
         } else {
-            LOGGER.warning("Dynamic request mot met: First path: '" + firstPath + "' late path: '" + lastPath + "'");
+            GitLabWebHookDiagnostics.note(LOGGER, Level.FINE, "Dynamic request not met: first path: ''{0}'' last path: ''{1}''", firstPath, lastPath);
         }
 
         throw HttpResponses.ok();
@@ -173,48 +172,62 @@ public class GitLabWebHook implements UnprotectedRootAction {
             throw new IllegalArgumentException("This repo does not use git.");
         }
 
-        AbstractBuild mainBuild = this.getBuildBySHA1(project, commitSHA1, true);
+        GitLabStatusCache.Entry cached = GitLabStatusCache.get().get(project.getFullName(), commitSHA1);
+        if (cached != null) {
+            this.writeStatusJSON(req, rsp, cached, 0);
+            return;
+        }
+
+        GitLabBuildSummary mainBuild = this.getSummaryBySHA1(project, commitSHA1, true);
 
         JSONObject object = new JSONObject();
         object.put("sha", commitSHA1);
 
         if (mainBuild == null) {
-            try {
-                object.put("status", "pending");
-                this.writeJSON(rsp, object);
-                return;
-            } catch (IOException e) {
-                throw HttpResponses.error(500, "Could not generate response.");
-            }
+            object.put("status", "pending");
+            this.writeStatusJSON(req, rsp, new GitLabStatusCache.Entry(object.toString()), PENDING_STATUS_MAX_AGE);
+            return;
         }
 
         object.put("id", mainBuild.getNumber());
 
-        BallColor currentBallColor = mainBuild.getIconColor().noAnime();
-
         //TODO: add status of pending when we figure it out.
         if (mainBuild.isBuilding()) {
             object.put("status", "running");
-        } else if (currentBallColor == BallColor.BLUE) {
+        } else if (mainBuild.getResult() == Result.SUCCESS) {
             object.put("status", "success");
-        } else if (currentBallColor == BallColor.ABORTED) {
-            object.put("status", "failed");
-        } else if (currentBallColor == BallColor.DISABLED) {
-            object.put("status", "failed");
-        } else if (currentBallColor == BallColor.GREY) {
-            object.put("status", "failed");
-        } else if (currentBallColor == BallColor.NOTBUILT) {
-            object.put("status", "failed");
-        } else if (currentBallColor == BallColor.RED) {
-            object.put("status", "failed");
-        } else if (currentBallColor == BallColor.YELLOW) {
-            object.put("status", "failed");
         } else {
             object.put("status", "failed");
         }
 
+        GitLabStatusCache.Entry entry = new GitLabStatusCache.Entry(object.toString());
+        if (mainBuild.isBuilding()) {
+            this.writeStatusJSON(req, rsp, entry, PENDING_STATUS_MAX_AGE);
+        } else {
+            GitLabStatusCache.get().put(project.getFullName(), commitSHA1, entry);
+            this.writeStatusJSON(req, rsp, entry, 0);
+        }
+    }
+
+    /**
+     * Writes a status.json answer, or just 304 if the client already has it.
+     *
+     * @param maxAge seconds the client may use the answer without asking again; 0 for answers about finished
+     *               builds, which change when the commit is built again, so that clients revalidate their ETag
+     */
+    void writeStatusJSON(StaplerRequest req, StaplerResponse rsp, GitLabStatusCache.Entry entry, int maxAge) {
+        rsp.setHeader("ETag", entry.getETag());
+        rsp.setHeader("Cache-Control", maxAge > 0 ? "private, max-age=" + maxAge : "private, no-cache");
+        if (entry.getETag().equals(req.getHeader("If-None-Match"))) {
+            // thrown, handle() would otherwise answer 200 with an empty body
+            throw HttpResponses.status(HttpServletResponse.SC_NOT_MODIFIED);
+        }
         try {
-            this.writeJSON(rsp, object);
+            rsp.setContentType("application/json");
+            PrintWriter w = rsp.getWriter();
+            w.write(entry.getBody());
+            w.flush();
+            w.close();
         } catch (IOException e) {
             throw HttpResponses.error(500, "Could not generate response.");
         }
@@ -226,12 +239,12 @@ public class GitLabWebHook implements UnprotectedRootAction {
             throw new IllegalArgumentException("This repo does not use git.");
         }
 
-        AbstractBuild mainBuild = null;
+        GitLabBuildSummary mainBuild = null;
 
         if (branch != null) {
-            mainBuild = this.getBuildByBranch(project, branch);
+            mainBuild = this.getSummaryByBranch(project, branch);
         } else if (commitSHA1 != null) {
-            mainBuild = this.getBuildBySHA1(project, commitSHA1, false);
+            mainBuild = this.getSummaryBySHA1(project, commitSHA1, false);
         }
 
         String baseUrl = Jenkins.getInstance().getRootUrl();
@@ -241,15 +254,13 @@ public class GitLabWebHook implements UnprotectedRootAction {
         }
         String imageUrl = "images/unknown.png";
         if (null != mainBuild) {
-            BallColor currentBallColor = mainBuild.getIconColor().noAnime();
-
             if (mainBuild.isBuilding()) {
                 imageUrl = "images/running.png";
-            } else if (currentBallColor == BallColor.BLUE) {
+            } else if (mainBuild.getResult() == Result.SUCCESS) {
                 imageUrl = "images/success.png";
-            } else if (currentBallColor == BallColor.RED) {
+            } else if (mainBuild.getResult() == Result.FAILURE) {
                 imageUrl = "images/failed.png";
-            } else if (currentBallColor == BallColor.YELLOW) {
+            } else if (mainBuild.getResult() == Result.UNSTABLE) {
                 imageUrl = "images/unstable.png";
             } else {
                 imageUrl = "images/unknown.png";
@@ -259,7 +270,7 @@ public class GitLabWebHook implements UnprotectedRootAction {
         SecurityContextHolder.getContext().setAuthentication(ACL.SYSTEM);
         try {
             URL resourceUrl = new URL(Jenkins.getInstance().getPlugin("gitlab-plugin").getWrapper().baseResourceURL + imageUrl);
-            LOGGER.info("serving image " + resourceUrl.toExternalForm());
+            LOGGER.log(Level.FINE, "serving image {0}", resourceUrl);
             rsp.setHeader("Expires", "Fri, 01 Jan 1984 00:00:00 GMT");
             rsp.setHeader("Cache-Control", "no-cache, private");
             rsp.setHeader("Content-Type", "image/png");
@@ -296,23 +307,63 @@ public class GitLabWebHook implements UnprotectedRootAction {
      */
     private void generateBuild(String data, AbstractProject project, StaplerRequest req, StaplerResponse rsp) {
         JSONObject json = JSONObject.fromObject(data);
-        LOGGER.log(Level.FINE, "data: {0}", json.toString(4));
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.log(Level.FINE, "data: {0}", json.toString(4));
+        }
+
+        if (GitLabEventDeduplicator.get().isDuplicate(project.getFullName(), json)) {
+            return;
+        }
 
         String objectType = json.optString("object_kind");
 
-        if (objectType != null && objectType.equals("merge_request")) {
-            this.generateMergeRequestBuild(data, project, req, rsp);
-        } else {
-            this.generatePushBuild(data, project, req, rsp);
+        try {
+            if (objectType != null && objectType.equals("merge_request")) {
+                this.generateMergeRequestBuild(data, project, req, rsp);
+            } else if (this.isBuildablePush(project, json)) {
+                this.generatePushBuild(data, project, req, rsp);
+            }
+        } catch (RuntimeException e) {
+            // not handed off, let GitLab's redelivery through
+            GitLabEventDeduplicator.get().forget(project.getFullName(), json);
+            throw e;
+        } catch (Error e) {
+            GitLabEventDeduplicator.get().forget(project.getFullName(), json);
+            throw e;
         }
     }
 
+    /**
+     * Classifies a push from its before/after SHAs and ref only, so that branch deletions
+     * and pushes which don't move the ref are dropped without binding their commit lists.
+     * Keeps the cached branch lists in sync on the way.
+     */
+    private boolean isBuildablePush(AbstractProject project, JSONObject json) {
+        final String ref = json.optString("ref");
+        final GitLabPushType type = GitLabPushType.classify(json.optString("before", null), json.optString("after", null), ref);
+        final Integer projectId = json.has("project_id") ? json.optInt("project_id") : null;
+        final GitLabPushTrigger trigger = (GitLabPushTrigger) project.getTrigger(GitLabPushTrigger.class);
+        final GitLabConnection connection = trigger == null ? null : trigger.getConnection();
+        final GitLabBranchCache branchCache = connection == null ? null : connection.getBranchCache();
+        if (type == GitLabPushType.DELETE) {
+            if (branchCache != null && ref.startsWith("refs/heads/")) {
+                branchCache.onBranchDeleted(projectId, ref.substring("refs/heads/".length()));
+            }
+            GitLabWebHookDiagnostics.note(LOGGER, Level.FINE, "{0} was deleted, no build started", ref);
+        } else if (type == GitLabPushType.EMPTY) {
+            GitLabWebHookDiagnostics.note(LOGGER, Level.FINE, "{0} was not changed by the push, no build started", ref);
+        } else if (type == GitLabPushType.CREATE && branchCache != null && ref.startsWith("refs/heads/")) {
+            branchCache.onBranchCreated(projectId, ref.substring("refs/heads/".length()));
+        }
+        return type.isBuildable();
+    }
+
     public void generatePushBuild(String json, AbstractProject project, StaplerRequest req, StaplerResponse rsp) {
         GitLabPushRequest request = GitLabPushRequest.create(json);
 
         String repositoryUrl = request.getRepository().getUrl();
         if (repositoryUrl == null) {
-            LOGGER.log(Level.WARNING, "No repository url found.");
+            GitLabWebHookDiagnostics.note(LOGGER, Level.WARNING, "No repository url found.");
             return;
         }
 
@@ -325,7 +376,7 @@ public class GitLabWebHook implements UnprotectedRootAction {
             }
             trigger.onPost(request);
 
-            if (trigger.getTriggerOpenMergeRequestOnPush()) {
+            if (trigger.getTriggerOpenMergeRequestOnPush() && request.getPushType() != GitLabPushType.TAG) {
                 // Fetch and build open merge requests with the same source branch
                 buildOpenMergeRequests(trigger, request.getProject_id(), request.getRef());
             }
@@ -336,19 +387,16 @@ public class GitLabWebHook implements UnprotectedRootAction {
 
     protected void buildOpenMergeRequests(GitLabPushTrigger trigger, Integer projectId, String projectRef) {
         try {
-            GitLab api = new GitLab();
-            List<org.gitlab.api.models.GitlabMergeRequest> reqs = api.instance().getMergeRequests(projectId);
+            GitLabConnection connection = trigger.getConnection();
+            if (connection == null) {
+                return;
+            }
+            GitLab api = connection.getClient();
+            List<org.gitlab.api.models.GitlabMergeRequest> reqs = api.getMergeRequests(projectId);
             for (org.gitlab.api.models.GitlabMergeRequest mr : reqs) {
                 if (!mr.isClosed() && !mr.isMerged() && projectRef.endsWith(mr.getSourceBranch())) {
-                    LOGGER.log(Level.FINE,
-                               "Generating new merge trigger from "
-                               + mr.toString() + "\n source: "
-                               + mr.getSourceBranch() + "\n target: "
-                               + mr.getTargetBranch() + "\n state: "
-                               + mr.getState() + "\n assign: "
-                               + mr.getAssignee() + "\n author: "
-                               + mr.getAuthor() + "\n id: " + mr.getId()
-                               + "\n iid: " + mr.getIid() + "\n\n");
+                    GitLabWebHookDiagnostics.note(LOGGER, Level.FINE, "Generating new merge trigger from merge request !{0} (id {1}): {2} -> {3}, {4}",
+                                                  String.valueOf(mr.getIid()), String.valueOf(mr.getId()), mr.getSourceBranch(), mr.getTargetBranch(), mr.getState());
                     GitLabMergeRequest newReq = new GitLabMergeRequest();
                     newReq.setObject_kind("merge_request");
                     newReq.setObjectAttribute(new GitLabMergeRequest.ObjectAttributes());
@@ -367,6 +415,7 @@ public class GitLabWebHook implements UnprotectedRootAction {
                     newReq.getObjectAttribute().setTargetBranch(mr.getTargetBranch());
                     newReq.getObjectAttribute().setTargetProjectId(projectId);
                     newReq.getObjectAttribute().setTitle(mr.getTitle());
+                    newReq.setDetails(mr);
 
                     Authentication old = SecurityContextHolder.getContext().getAuthentication();
                     SecurityContextHolder.getContext().setAuthentication(ACL.SYSTEM);
@@ -378,26 +427,31 @@ public class GitLabWebHook implements UnprotectedRootAction {
                     return;
                 }
             }
+        } catch (GitLabUnavailableException e) {
+            GitLabWebHookDiagnostics.note(LOGGER, Level.FINE, "Not looking up open merge requests: {0}", e.getMessage());
         } catch (Exception e) {
-            LOGGER.warning("failed to communicate with gitlab server to determine is this is an update for a merge request: "
-                           + e.getMessage());
-            e.printStackTrace();
+            GitLabWebHookDiagnostics.note(LOGGER, Level.WARNING, "failed to communicate with gitlab server to determine is this is an update for a merge request: {0}", e.getMessage());
+            LOGGER.log(Level.FINE, "GitLab request failed", e);
         }
     }
 
     public void generateMergeRequestBuild(String json, AbstractProject project, StaplerRequest req, StaplerResponse rsp) {
         GitLabMergeRequest request = GitLabMergeRequest.create(json);
         if (request.getObjectAttribute().getState().equals("closed")) {
-            LOGGER.log(Level.INFO, "Closed Merge Request, no build started");
+            GitLabWebHookDiagnostics.note(LOGGER, Level.INFO, "Closed Merge Request, no build started");
             return;
         }
         if (request.getObjectAttribute().getState().equals("merged")) {
-            LOGGER.log(Level.INFO, "Accepted Merge Request, no build started");
+            GitLabWebHookDiagnostics.note(LOGGER, Level.INFO, "Accepted Merge Request, no build started");
             return;
         }
-        AbstractBuild mergeBuild = getBuildBySHA1(project, request.getObjectAttribute().getLastCommit().getId(), true);
+        GitLabBuildSummary mergeBuild = getSummaryBySHA1(project, request.getObjectAttribute().getLastCommit().getId(), true);
         if (mergeBuild != null) {
-            LOGGER.log(Level.INFO, "Last commit in Merge Request has already been build in build #" + mergeBuild.getId());
+            GitLabWebHookDiagnostics.note(LOGGER, Level.INFO, "Last commit in Merge Request has already been build in build #{0}", String.valueOf(mergeBuild.getNumber()));
+            return;
+        }
+        if (GitLabQueuedMergeRequests.get().isQueued(project.getFullName(), request)) {
+            GitLabWebHookDiagnostics.note(LOGGER, Level.INFO, "Last commit in Merge Request is already waiting to be built");
             return;
         }
 
@@ -425,7 +479,86 @@ public class GitLabWebHook implements UnprotectedRootAction {
      * @param commitSHA1
      * @return
      */
-    private AbstractBuild getBuildBySHA1(AbstractProject project, String commitSHA1, boolean triggeredByMergeRequest) {
+    AbstractBuild getBuildBySHA1(AbstractProject project, String commitSHA1, boolean triggeredByMergeRequest) {
+        GitLabBuildSummary summary = getSummaryBySHA1(project, commitSHA1, triggeredByMergeRequest);
+        return summary == null ? null : (AbstractBuild) project.getBuildByNumber(summary.getNumber());
+    }
+
+    /**
+     *
+     * @param project
+     * @param branch
+     * @return latest build of the branch specified that is not part of a merge request
+     */
+    @SuppressWarnings("rawtypes")
+    AbstractBuild getBuildByBranch(AbstractProject project, String branch) {
+        GitLabBuildSummary summary = getSummaryByBranch(project, branch);
+        return summary == null ? null : (AbstractBuild) project.getBuildByNumber(summary.getNumber());
+    }
+
+    /**
+     * Like {@link #getBuildBySHA1(AbstractProject, String, boolean)}, without loading completed builds.
+     */
+    @SuppressWarnings("unchecked")
+    GitLabBuildSummary getSummaryBySHA1(AbstractProject project, String commitSHA1, boolean triggeredByMergeRequest) {
+        GitLabCommitIndex index = GitLabCommitIndex.of(project);
+        if (index != null) {
+            try {
+                for (int number : index.find(project, commitSHA1, triggeredByMergeRequest)) {
+                    GitLabBuildSummary summary = GitLabBuildSummary.load(project, number);
+                    if (summary == null) {
+                        // running builds have no summary yet, and are in memory anyway
+                        AbstractBuild<?, ?> build = (AbstractBuild<?, ?>) project.getBuildByNumber(number);
+                        summary = build != null && build.isBuilding() ? GitLabBuildSummary.of(build) : null;
+                    }
+                    if (summary != null) {
+                        return summary;
+                    }
+                }
+                return null;
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not read the build summaries of " + project.getFullName() + ", searching all builds", e);
+            }
+        }
+
+        AbstractBuild build = findBuildBySHA1(project, commitSHA1, triggeredByMergeRequest);
+        return build == null ? null : GitLabBuildSummary.of(build);
+    }
+
+    /**
+     * Like {@link #getBuildByBranch(AbstractProject, String)}, without loading completed builds.
+     */
+    @SuppressWarnings("unchecked")
+    GitLabBuildSummary getSummaryByBranch(AbstractProject project, String branch) {
+        if (project.getRootDir() != null) {
+            try {
+                // first, as creating the summaries of a job starts tracking its running builds
+                GitLabBuildSummary latest = GitLabBuildSummary.loadLatest(project, branch);
+                GitLabBuildSummary running = getRunningSummaryByBranch(project, branch);
+                return running != null ? running : latest;
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not read the build summaries of " + project.getFullName() + ", searching all builds", e);
+            }
+        }
+
+        AbstractBuild build = findBuildByBranch(project, branch);
+        return build == null ? null : GitLabBuildSummary.of(build);
+    }
+
+    @SuppressWarnings("unchecked")
+    private GitLabBuildSummary getRunningSummaryByBranch(AbstractProject project, String branch) {
+        GitLabBuildSummary found = null;
+        for (AbstractBuild<?, ?> build : GitLabCommitIndex.getRunningBuilds(project)) {
+            GitLabBuildSummary summary = GitLabBuildSummary.of(build);
+            if (summary.isOnBranch(branch) && !summary.isMergeBuild()
+                    && (found == null || summary.getNumber() > found.getNumber())) {
+                found = summary;
+            }
+        }
+        return found;
+    }
+
+    private AbstractBuild findBuildBySHA1(AbstractProject project, String commitSHA1, boolean triggeredByMergeRequest) {
         List<AbstractBuild> builds = project.getBuilds();
         for (AbstractBuild build : builds) {
             BuildData data = build.getAction(BuildData.class);
@@ -434,7 +567,7 @@ public class GitLabWebHook implements UnprotectedRootAction {
             boolean isMergeBuild = merge != null && !merge.getSha1().equals(b.getMarked().getSha1String());
             if (b != null && b.getMarked() != null && b.getMarked().getSha1String().equals(commitSHA1)) {
                 if (triggeredByMergeRequest == isMergeBuild) {
-                    LOGGER.log(Level.FINE, build.getNumber() + " Build found matching " + commitSHA1 + " " + (isMergeBuild ? "merge" : "normal") + " build");
+                    LOGGER.log(Level.FINE, "{0} Build found matching {1} {2} build", new Object[] { String.valueOf(build.getNumber()), commitSHA1, isMergeBuild ? "merge" : "normal" });
                     return build;
                 }
             }
@@ -442,14 +575,8 @@ public class GitLabWebHook implements UnprotectedRootAction {
         return null;
     }
 
-    /**
-     *
-     * @param project
-     * @param branch
-     * @return latest build of the branch specified that is not part of a merge request
-     */
     @SuppressWarnings("rawtypes")
-    private AbstractBuild getBuildByBranch(AbstractProject project, String branch) {
+    private AbstractBuild findBuildByBranch(AbstractProject project, String branch) {
         List<AbstractBuild> builds = project.getBuilds();
         for (AbstractBuild build : builds) {
             BuildData data = build.getAction(BuildData.class);
@@ -468,26 +595,6 @@ public class GitLabWebHook implements UnprotectedRootAction {
         return null;
     }
 
-    /**
-     *
-     * @param rsp The stapler response to write the output to.
-     * @throws IOException
-     */
-    private void writeJSON(StaplerResponse rsp, JSONObject jsonObject) throws IOException {
-        rsp.setContentType("application/json");
-        PrintWriter w = rsp.getWriter();
-
-        if (jsonObject == null) {
-            w.write("null");
-        } else {
-            w.write(jsonObject.toString());
-        }
-
-        w.flush();
-        w.close();
-
-    }
-
     @Extension
     public static class GitlabWebHookCrumbExclusion extends CrumbExclusion {
 
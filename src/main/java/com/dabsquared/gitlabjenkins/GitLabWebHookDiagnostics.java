@@ -0,0 +1,187 @@
+package com.dabsquared.gitlabjenkins;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.kohsuke.stapler.StaplerRequest;
+
+import hudson.Extension;
+import hudson.model.ManagementLink;
+
+/**
+ * Keeps the last webhook deliveries (headers, start of the payload, what was decided and how long it took)
+ * for the "GitLab Webhook Events" management page, so that diagnosing a hook doesn't need verbose logging.
+ *
+ * Deliveries are kept in a fixed-size ring written without locking. Notes are stored with their arguments
+ * and only formatted when the page is viewed; they are also logged, which formats them only if the level
+ * is enabled.
+ */
+@Extension
+public class GitLabWebHookDiagnostics extends ManagementLink {
+
+    private static final int SIZE = Integer.getInteger(GitLabWebHookDiagnostics.class.getName() + ".size", 100);
+    private static final int MAX_PAYLOAD = Integer.getInteger(GitLabWebHookDiagnostics.class.getName() + ".maxPayload", 4096);
+
+    private static final String[] HEADERS = { "X-Gitlab-Event", "Content-Type", "Content-Length", "User-Agent" };
+
+    private static final AtomicReferenceArray<Event> EVENTS = new AtomicReferenceArray<Event>(SIZE);
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+    private static final ThreadLocal<Event> CURRENT = new ThreadLocal<Event>();
+
+    /**
+     * Starts recording a webhook delivery on the current thread. Only POSTs are recorded, status
+     * requests are not.
+     */
+    static void begin(StaplerRequest req) {
+        if ("POST".equals(req.getMethod())) {
+            CURRENT.set(new Event(req));
+        } else {
+            CURRENT.remove();
+        }
+    }
+
+    static void payload(String payload) {
+        final Event event = CURRENT.get();
+        if (event != null) {
+            event.payload = payload.length() > MAX_PAYLOAD ? payload.substring(0, MAX_PAYLOAD) + "..." : payload;
+        }
+    }
+
+    /**
+     * Logs a message and adds it to the delivery being recorded on the current thread, if any.
+     */
+    static void note(Logger logger, Level level, String pattern, Object... args) {
+        logger.log(level, pattern, args);
+        final Event event = CURRENT.get();
+        if (event != null) {
+            event.notes.add(new Note(level, pattern, args));
+        }
+    }
+
+    /**
+     * Finishes the delivery being recorded on the current thread and publishes it.
+     */
+    static void end() {
+        final Event event = CURRENT.get();
+        if (event == null) {
+            return;
+        }
+        CURRENT.remove();
+        event.durationMillis = System.currentTimeMillis() - event.time;
+        EVENTS.set((int) (SEQUENCE.getAndIncrement() % SIZE), event);
+    }
+
+    /**
+     * @return the recorded deliveries, newest first
+     */
+    public List<Event> getEvents() {
+        final long last = SEQUENCE.get();
+        final List<Event> events = new ArrayList<Event>();
+        for (long i = last - 1; i >= 0 && i >= last - SIZE; i--) {
+            final Event event = EVENTS.get((int) (i % SIZE));
+            if (event != null && !events.contains(event)) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return "clipboard.png";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "gitlab-webhook-events";
+    }
+
+    public String getDisplayName() {
+        return "GitLab Webhook Events";
+    }
+
+    @Override
+    public String getDescription() {
+        return "The last webhook deliveries received from GitLab and what was done with them.";
+    }
+
+    public static final class Event {
+
+        private final long time = System.currentTimeMillis();
+        private final String path;
+        private final Map<String, String> headers = new LinkedHashMap<String, String>();
+        private final List<Note> notes = Collections.synchronizedList(new ArrayList<Note>());
+        private String payload = "";
+        private long durationMillis;
+
+        private Event(StaplerRequest req) {
+            this.path = req.getRequestURI();
+            for (String name : HEADERS) {
+                final String value = req.getHeader(name);
+                if (value != null) {
+                    headers.put(name, value);
+                }
+            }
+        }
+
+        public Date getTime() {
+            return new Date(time);
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public Map<String, String> getHeaders() {
+            return headers;
+        }
+
+        public String getPayload() {
+            return payload;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        public List<String> getNotes() {
+            final List<String> messages = new ArrayList<String>();
+            synchronized (notes) {
+                for (Note note : notes) {
+                    messages.add(note.toString());
+                }
+            }
+            return messages;
+        }
+
+    }
+
+    private static final class Note {
+
+        private final Level level;
+        private final String pattern;
+        private final Object[] args;
+
+        private Note(Level level, String pattern, Object[] args) {
+            this.level = level;
+            this.pattern = pattern;
+            this.args = args;
+        }
+
+        @Override
+        public String toString() {
+            return level + ": " + (args.length == 0 ? pattern : MessageFormat.format(pattern, args));
+        }
+
+    }
+
+}
@@ -0,0 +1,112 @@
+package com.dabsquared.gitlabjenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class GitLabApiGuardTest {
+
+    private final GitLabApiGuard guard = new GitLabApiGuard("gitlab");
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    public void fastCallsRaiseTheLimit() throws Exception {
+        final int initial = guard.getLimit();
+        for (int i = 0; i < 50; i++) {
+            assertEquals("ok", guard.execute("test", succeeding()));
+        }
+        assertTrue(guard.getLimit() > initial);
+        assertEquals(0, guard.getInFlight());
+    }
+
+    @Test
+    public void failuresHalveTheLimitAndOpenTheCircuit() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            guard.execute("test", succeeding());
+        }
+        final int raised = guard.getLimit();
+        failOnce(new IOException("Connection refused"));
+        assertEquals(Math.max(1, raised / 2), guard.getLimit());
+
+        for (int i = 0; i < 4; i++) {
+            failOnce(new IOException("Connection refused"));
+        }
+        assertTrue(guard.isOpen());
+
+        calls.set(0);
+        try {
+            guard.execute("test", succeeding());
+            fail("the circuit is open");
+        } catch (GitLabUnavailableException e) {
+            assertEquals("no call is made while the circuit is open", 0, calls.get());
+        }
+        assertEquals(1, guard.getRejectedCount());
+        assertEquals(0, guard.getInFlight());
+    }
+
+    @Test
+    public void notFoundIsNotAFailure() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            try {
+                guard.execute("test", failing(new FileNotFoundException("https://gitlab/api/v3/projects/1")));
+                fail();
+            } catch (FileNotFoundException e) {
+                // expected
+            }
+        }
+        assertFalse(guard.isOpen());
+    }
+
+    @Test
+    public void rateLimitOpensTheCircuitAtOnce() throws Exception {
+        failOnce(new IOException("Server returned HTTP response code: 429 for URL: https://gitlab/api/v3/projects"));
+        assertTrue(guard.isOpen());
+    }
+
+    @Test
+    public void resetClosesTheCircuit() throws Exception {
+        failOnce(new IOException("Server returned HTTP response code: 429"));
+        guard.reset();
+        assertFalse(guard.isOpen());
+        assertEquals("ok", guard.execute("test", succeeding()));
+    }
+
+    private void failOnce(IOException e) {
+        try {
+            guard.execute("test", failing(e));
+            fail();
+        } catch (IOException expected) {
+            assertEquals(e, expected);
+        }
+    }
+
+    private GitLabApiGuard.Call<String> succeeding() {
+        return new GitLabApiGuard.Call<String>() {
+
+            public String call() {
+                calls.incrementAndGet();
+                return "ok";
+            }
+
+        };
+    }
+
+    private GitLabApiGuard.Call<String> failing(final IOException e) {
+        return new GitLabApiGuard.Call<String>() {
+
+            public String call() throws IOException {
+                calls.incrementAndGet();
+                throw e;
+            }
+
+        };
+    }
+
+}
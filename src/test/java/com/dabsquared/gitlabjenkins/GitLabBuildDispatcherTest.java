@@ -0,0 +1,134 @@
+package com.dabsquared.gitlabjenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import hudson.model.Cause;
+
+public class GitLabBuildDispatcherTest {
+
+    /** The default per branch cap. */
+    private static final int MAX_PER_BRANCH = 5;
+
+    private final GitLabBuildDispatcher dispatcher = new GitLabBuildDispatcher();
+    private final List<Cause> scheduled = new CopyOnWriteArrayList<Cause>();
+
+    @Test
+    public void buildsAboveTheBranchCapWaitForAFinishedOne() throws Exception {
+        final List<Cause> causes = new CopyOnWriteArrayList<Cause>();
+        for (int i = 0; i <= MAX_PER_BRANCH; i++) {
+            final Cause cause = push(1, "master", i);
+            causes.add(cause);
+            dispatcher.submit(cause, ticket(cause, true));
+        }
+        assertEquals(MAX_PER_BRANCH, scheduled.size());
+        assertEquals(1, dispatcher.getWaitingCount(GitLabBuildDispatcher.Lane.PUSH));
+
+        // other branches have their own cap
+        final Cause otherBranch = push(1, "develop", 0);
+        dispatcher.submit(otherBranch, ticket(otherBranch, true));
+        assertTrue(scheduled.contains(otherBranch));
+
+        dispatcher.onFinished(Collections.singletonList(causes.get(0)));
+        awaitScheduled(MAX_PER_BRANCH + 2);
+        assertTrue(scheduled.contains(causes.get(MAX_PER_BRANCH)));
+        assertEquals(0, dispatcher.getWaitingCount(GitLabBuildDispatcher.Lane.PUSH));
+        assertEquals(MAX_PER_BRANCH + 2, dispatcher.getStats(GitLabBuildDispatcher.Lane.PUSH).getDispatched());
+    }
+
+    @Test
+    public void refusedBuildReleasesItsSlotOnlyOnce() throws Exception {
+        // folded by Jenkins into an item already queued, whose build later finishes with this cause too
+        final Cause folded = push(2, "master", -1);
+        dispatcher.submit(folded, ticket(folded, false));
+
+        for (int i = 0; i < MAX_PER_BRANCH; i++) {
+            final Cause cause = push(2, "master", i);
+            dispatcher.submit(cause, ticket(cause, true));
+        }
+        final Cause waiting = push(2, "master", MAX_PER_BRANCH);
+        dispatcher.submit(waiting, ticket(waiting, true));
+        assertEquals(1, dispatcher.getWaitingCount(GitLabBuildDispatcher.Lane.PUSH));
+
+        dispatcher.onFinished(Collections.singletonList(folded));
+        Thread.sleep(200);
+        assertEquals("the folded cause holds no slot", 1, dispatcher.getWaitingCount(GitLabBuildDispatcher.Lane.PUSH));
+
+        dispatcher.onFinished(Collections.singletonList(scheduled.get(1)));
+        awaitScheduled(MAX_PER_BRANCH + 2);
+        assertTrue(scheduled.contains(waiting));
+    }
+
+    @Test
+    public void pushesGoBeforeMergeRequests() throws Exception {
+        final List<Cause> running = new CopyOnWriteArrayList<Cause>();
+        for (int i = 0; i < MAX_PER_BRANCH; i++) {
+            final Cause cause = push(3, "master", i);
+            running.add(cause);
+            dispatcher.submit(cause, ticket(cause, true));
+        }
+        final Cause mergeRequest = mergeRequest(3, "master");
+        dispatcher.submit(mergeRequest, ticket(mergeRequest, true));
+        final Cause push = push(3, "master", MAX_PER_BRANCH);
+        dispatcher.submit(push, ticket(push, true));
+        assertEquals(1, dispatcher.getWaitingCount(GitLabBuildDispatcher.Lane.MERGE_REQUEST));
+
+        dispatcher.onFinished(Collections.singletonList(running.get(0)));
+        awaitScheduled(MAX_PER_BRANCH + 1);
+        assertEquals(push, scheduled.get(MAX_PER_BRANCH));
+
+        dispatcher.onFinished(Collections.singletonList(running.get(1)));
+        awaitScheduled(MAX_PER_BRANCH + 2);
+        assertEquals(mergeRequest, scheduled.get(MAX_PER_BRANCH + 1));
+    }
+
+    @Test
+    public void buildsWithoutGitLabProjectAreScheduledAtOnce() {
+        final Cause cause = new GitLabPushCause("user");
+        dispatcher.submit(cause, ticket(cause, true));
+        assertEquals(Collections.singletonList(cause), scheduled);
+    }
+
+    private void awaitScheduled(int count) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (scheduled.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, scheduled.size());
+    }
+
+    private GitLabBuildDispatcher.Ticket ticket(final Cause cause, final boolean accepted) {
+        return new GitLabBuildDispatcher.Ticket() {
+
+            public boolean schedule() {
+                if (accepted) {
+                    scheduled.add(cause);
+                }
+                return accepted;
+            }
+
+        };
+    }
+
+    private static Cause push(int projectId, String branch, int i) {
+        return new GitLabPushCause("user", projectId, branch, String.format("%040d", i + 1));
+    }
+
+    private static Cause mergeRequest(int projectId, String targetBranch) {
+        final GitLabMergeRequest.ObjectAttributes attributes = new GitLabMergeRequest.ObjectAttributes();
+        attributes.setIid(1);
+        attributes.setTargetProjectId(projectId);
+        attributes.setTargetBranch(targetBranch);
+        final GitLabMergeRequest request = new GitLabMergeRequest();
+        request.setObjectAttribute(attributes);
+        return new GitLabMergeCause(request);
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.dabsquared.gitlabjenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+public class GitLabChangeFilterTest {
+
+    @Test
+    public void skipMarkerInHeadCommitSkipsThePush() {
+        final GitLabChangeFilter filter = GitLabChangeFilter.compile("[ci skip], [skip ci]", null, null);
+        assertTrue(filter.isSkipped(push(commit("first"), commit("Fix typo [CI SKIP]"))));
+        assertFalse(filter.isSkipped(push(commit("[ci skip] first"), commit("second"))));
+        assertFalse(filter.isSkipped(push()));
+    }
+
+    @Test
+    public void noSkipMarkersSkipNothing() {
+        assertFalse(GitLabChangeFilter.compile("", null, null).isSkipped(push(commit("[ci skip]"))));
+    }
+
+    @Test
+    public void changedPathsAreCollectedFromAllCommits() {
+        final GitLabPushRequest.Commit first = commit("first");
+        first.setAdded(Arrays.asList("a.txt"));
+        first.setModified(Collections.<String>emptyList());
+        final GitLabPushRequest.Commit second = commit("second");
+        second.setModified(Arrays.asList("src/b.java"));
+        second.setRemoved(Arrays.asList("c.txt"));
+        final GitLabChangeFilter filter = GitLabChangeFilter.compile(null, null, null);
+        assertEquals(new HashSet<String>(Arrays.asList("a.txt", "src/b.java", "c.txt")), filter.getChangedPaths(push(first, second)));
+    }
+
+    @Test
+    public void changedPathsAreUnknownWithoutFileListsOrWithTruncatedCommits() {
+        final GitLabChangeFilter filter = GitLabChangeFilter.compile(null, null, null);
+        assertNull(filter.getChangedPaths(push()));
+        assertNull(filter.getChangedPaths(push(commit("no file lists"))));
+
+        final GitLabPushRequest.Commit commit = commit("listed");
+        commit.setAdded(Arrays.asList("a.txt"));
+        final GitLabPushRequest truncated = push(commit);
+        truncated.setTotal_commits_count(30);
+        assertNull(filter.getChangedPaths(truncated));
+    }
+
+    @Test
+    public void relevantPaths() {
+        final GitLabChangeFilter filter = GitLabChangeFilter.compile(null, "src/**", "src/**/*.md");
+        assertTrue(filter.hasPathFilter());
+        assertTrue(filter.isRelevant(Arrays.asList("README.md", "src/main/A.java")));
+        assertFalse(filter.isRelevant(Arrays.asList("README.md", "src/docs/guide.md")));
+        assertFalse(filter.isRelevant(Collections.<String>emptyList()));
+        assertFalse(GitLabChangeFilter.compile("[ci skip]", null, null).hasPathFilter());
+    }
+
+    private static GitLabPushRequest push(GitLabPushRequest.Commit... commits) {
+        final GitLabPushRequest push = new GitLabPushRequest();
+        push.setRef("refs/heads/master");
+        final List<GitLabPushRequest.Commit> list = new ArrayList<GitLabPushRequest.Commit>(Arrays.asList(commits));
+        push.setCommits(list);
+        return push;
+    }
+
+    private static GitLabPushRequest.Commit commit(String message) {
+        final GitLabPushRequest.Commit commit = new GitLabPushRequest.Commit();
+        commit.setId(Integer.toHexString(message.hashCode()));
+        commit.setMessage(message);
+        return commit;
+    }
+
+}
@@ -0,0 +1,130 @@
+package com.dabsquared.gitlabjenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Result;
+import hudson.plugins.git.Revision;
+import hudson.plugins.git.util.Build;
+import hudson.plugins.git.util.BuildData;
+import hudson.plugins.git.util.MergeRecord;
+import hudson.util.RunList;
+
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class GitLabCommitIndexTest {
+
+    private static final String SHA1 = "1111111111111111111111111111111111111111";
+    private static final String SHA2 = "2222222222222222222222222222222222222222";
+    private static final String TARGET = "3333333333333333333333333333333333333333";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<AbstractBuild> builds = new ArrayList<AbstractBuild>();
+
+    @Test
+    public void indexIsCreatedFromTheExistingBuilds() throws Exception {
+        final AbstractProject project = project("created");
+        build(project, 1, SHA1, false);
+        build(project, 2, SHA2, false);
+        build(project, 3, SHA1, false);
+        build(project, 4, SHA1, true);
+
+        final GitLabCommitIndex index = GitLabCommitIndex.of(project);
+        assertEquals(Arrays.asList(3, 1), index.find(project, SHA1, false));
+        assertEquals(Arrays.asList(4), index.find(project, SHA1, true));
+        assertEquals(Arrays.asList(2), index.find(project, SHA2, false));
+        assertTrue(new File(project.getRootDir(), GitLabCommitIndex.FILE_NAME).exists());
+    }
+
+    @Test
+    public void completedBuildsAreAppended() throws Exception {
+        final AbstractProject project = project("appended");
+        build(project, 1, SHA1, false);
+        final GitLabCommitIndex index = GitLabCommitIndex.of(project);
+        assertEquals(Arrays.asList(1), index.find(project, SHA1, false));
+
+        index.add(build(project, 2, SHA1, false));
+        assertEquals(Arrays.asList(2, 1), index.find(project, SHA1, false));
+        assertEquals(Collections.emptyList(), index.find(project, SHA2, false));
+    }
+
+    @Test
+    public void runningBuildsAreFoundBeforeTheyAreIndexed() throws Exception {
+        final AbstractProject project = project("running");
+        build(project, 1, SHA1, false);
+        final GitLabCommitIndex index = GitLabCommitIndex.of(project);
+        assertEquals(Arrays.asList(1), index.find(project, SHA1, false));
+
+        final AbstractBuild running = build(project, 2, SHA1, false);
+        GitLabCommitIndex.onStarted(running);
+        try {
+            assertEquals(Arrays.asList(2, 1), index.find(project, SHA1, false));
+        } finally {
+            GitLabCommitIndex.onCompleted(running);
+        }
+        assertEquals(Arrays.asList(1), index.find(project, SHA1, false));
+    }
+
+    @Test
+    public void invalidShasMatchNothing() throws Exception {
+        final AbstractProject project = project("invalid");
+        build(project, 1, SHA1, false);
+        final GitLabCommitIndex index = GitLabCommitIndex.of(project);
+        assertEquals(Collections.emptyList(), index.find(project, "1111", false));
+        assertEquals(Collections.emptyList(), index.find(project, SHA1.replace('1', 'x'), false));
+        assertEquals(Collections.emptyList(), index.find(project, null, false));
+    }
+
+    private AbstractProject project(String name) throws Exception {
+        final AbstractProject project = mock(AbstractProject.class);
+        when(project.getRootDir()).thenReturn(folder.newFolder(name));
+        when(project.getFullName()).thenReturn(getClass().getName() + "/" + name);
+        final List<AbstractBuild> newestFirst = new ArrayList<AbstractBuild>();
+        when(project.getBuilds()).thenAnswer(new Answer<RunList>() {
+
+            public RunList answer(InvocationOnMock invocation) {
+                newestFirst.clear();
+                newestFirst.addAll(builds);
+                Collections.reverse(newestFirst);
+                return RunList.fromRuns(newestFirst);
+            }
+
+        });
+        builds.clear();
+        return project;
+    }
+
+    private AbstractBuild build(AbstractProject project, int number, String sha, boolean mergeBuild) {
+        final Revision revision = new Revision(ObjectId.fromString(sha));
+        final BuildData data = new BuildData();
+        data.lastBuild = new Build(revision, revision, number, Result.SUCCESS);
+        final AbstractBuild build = mock(AbstractBuild.class);
+        when(build.getNumber()).thenReturn(number);
+        when(build.getProject()).thenReturn(project);
+        when(build.getAction(BuildData.class)).thenReturn(data);
+        if (mergeBuild) {
+            when(build.getAction(MergeRecord.class)).thenReturn(new MergeRecord("master", TARGET));
+        }
+        builds.add(build);
+        return build;
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.dabsquared.gitlabjenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import net.sf.json.JSONObject;
+
+public class GitLabEventDeduplicatorTest {
+
+    private final GitLabEventDeduplicator deduplicator = new GitLabEventDeduplicator(100, 1, TimeUnit.HOURS);
+
+    @Test
+    public void redeliveredPushIsDropped() {
+        assertFalse(deduplicator.isDuplicate("job", push("a", "b")));
+        assertTrue(deduplicator.isDuplicate("job", push("a", "b")));
+        assertEquals(1, deduplicator.getDroppedPushCount());
+    }
+
+    @Test
+    public void samePushForAnotherJobIsAccepted() {
+        assertFalse(deduplicator.isDuplicate("job", push("a", "b")));
+        assertFalse(deduplicator.isDuplicate("other-job", push("a", "b")));
+    }
+
+    @Test
+    public void pushesToOtherCommitsAreAccepted() {
+        assertFalse(deduplicator.isDuplicate("job", push("a", "b")));
+        assertFalse(deduplicator.isDuplicate("job", push("b", "c")));
+    }
+
+    @Test
+    public void forgottenEventIsAcceptedAgain() {
+        assertFalse(deduplicator.isDuplicate("job", push("a", "b")));
+        deduplicator.forget("job", push("a", "b"));
+        assertFalse(deduplicator.isDuplicate("job", push("a", "b")));
+    }
+
+    @Test
+    public void mergeRequestUpdatesAreKeyedByLastCommitAndAction() {
+        assertFalse(deduplicator.isDuplicate("job", mergeRequest("c1", "open")));
+        assertTrue(deduplicator.isDuplicate("job", mergeRequest("c1", "open")));
+        assertFalse(deduplicator.isDuplicate("job", mergeRequest("c1", "update")));
+        assertFalse(deduplicator.isDuplicate("job", mergeRequest("c2", "update")));
+        assertEquals(1, deduplicator.getDroppedMergeRequestCount());
+        assertEquals(0, deduplicator.getDroppedPushCount());
+    }
+
+    @Test
+    public void eventsWithoutKeyAreNeverDropped() {
+        final JSONObject json = new JSONObject();
+        json.put("object_kind", "push");
+        assertFalse(deduplicator.isDuplicate("job", json));
+        assertFalse(deduplicator.isDuplicate("job", json));
+    }
+
+    private static JSONObject push(String before, String after) {
+        final JSONObject json = new JSONObject();
+        json.put("object_kind", "push");
+        json.put("project_id", 1);
+        json.put("ref", "refs/heads/master");
+        json.put("before", before);
+        json.put("after", after);
+        return json;
+    }
+
+    private static JSONObject mergeRequest(String lastCommit, String action) {
+        final JSONObject commit = new JSONObject();
+        commit.put("id", lastCommit);
+        final JSONObject attributes = new JSONObject();
+        attributes.put("id", 7);
+        attributes.put("last_commit", commit);
+        attributes.put("action", action);
+        final JSONObject json = new JSONObject();
+        json.put("object_kind", "merge_request");
+        json.put("object_attributes", attributes);
+        return json;
+    }
+
+}
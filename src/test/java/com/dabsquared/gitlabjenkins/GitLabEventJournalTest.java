@@ -0,0 +1,83 @@
+package com.dabsquared.gitlabjenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GitLabEventJournalTest {
+
+    private static final long SEGMENT_SIZE = 256;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void appendSurvivesRotationByItsOwnWrite() throws Exception {
+        final File dir = folder.newFolder("journal");
+        final GitLabEventJournal journal = new GitLabEventJournal(dir, SEGMENT_SIZE);
+        journal.open();
+
+        for (int i = 0; i < 50; i++) {
+            final long sequence = journal.append("job", push(i));
+            assertTrue(sequence > 0);
+            assertEquals("event " + i + " must be recoverable", 1, recover(dir).size());
+            journal.checkpoint(sequence);
+            assertEquals(0, recover(dir).size());
+        }
+    }
+
+    @Test
+    public void pendingEntrySurvivesRotationsAndCompaction() throws Exception {
+        final File dir = folder.newFolder("journal");
+        final GitLabEventJournal journal = new GitLabEventJournal(dir, SEGMENT_SIZE);
+        journal.open();
+
+        assertTrue(journal.append("kept-job", push(-1)) > 0);
+        for (int i = 0; i < 100; i++) {
+            journal.checkpoint(journal.append("job", push(i)));
+            final Map<Long, GitLabEventJournal.Entry> recovered = recover(dir);
+            assertEquals("after event " + i, 1, recovered.size());
+            assertTrue(recovered.values().iterator().next().getPayload().contains("kept-job"));
+        }
+        assertEquals(1, journal.getPendingCount());
+
+        final Map<Long, GitLabEventJournal.Entry> replay = new GitLabEventJournal(dir, SEGMENT_SIZE).open();
+        assertEquals(1, replay.size());
+        assertTrue(replay.values().iterator().next().getPayload().startsWith(GitLabPushRequest.KIND + "\nkept-job\n"));
+    }
+
+    @Test
+    public void checkpointedEntriesAreNotReplayed() throws Exception {
+        final File dir = folder.newFolder("journal");
+        final GitLabEventJournal journal = new GitLabEventJournal(dir, SEGMENT_SIZE);
+        journal.open();
+
+        final long first = journal.append("job", push(1));
+        journal.append("job", push(2));
+        journal.checkpoint(first);
+
+        final Map<Long, GitLabEventJournal.Entry> replay = new GitLabEventJournal(dir, SEGMENT_SIZE).open();
+        assertEquals(1, replay.size());
+        assertTrue(replay.values().iterator().next().getPayload().contains("refs/heads/branch-2"));
+    }
+
+    private static Map<Long, GitLabEventJournal.Entry> recover(File dir) throws Exception {
+        return new GitLabEventJournal(dir, SEGMENT_SIZE).recover();
+    }
+
+    private static GitLabPushRequest push(int i) {
+        final GitLabPushRequest push = new GitLabPushRequest();
+        push.setProject_id(1);
+        push.setRef("refs/heads/branch-" + i);
+        push.setBefore("0000000000000000000000000000000000000001");
+        push.setAfter("0000000000000000000000000000000000000002");
+        return push;
+    }
+
+}
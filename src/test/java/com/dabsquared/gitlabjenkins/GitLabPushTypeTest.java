@@ -0,0 +1,35 @@
+package com.dabsquared.gitlabjenkins;
+
+import static com.dabsquared.gitlabjenkins.GitLabPushType.NO_COMMIT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class GitLabPushTypeTest {
+
+    @Test
+    public void classify() {
+        assertEquals(GitLabPushType.CREATE, GitLabPushType.classify(NO_COMMIT, "a", "refs/heads/master"));
+        assertEquals(GitLabPushType.UPDATE, GitLabPushType.classify("a", "b", "refs/heads/master"));
+        assertEquals(GitLabPushType.EMPTY, GitLabPushType.classify("a", "a", "refs/heads/master"));
+        assertEquals(GitLabPushType.DELETE, GitLabPushType.classify("a", NO_COMMIT, "refs/heads/master"));
+        assertEquals(GitLabPushType.TAG, GitLabPushType.classify(NO_COMMIT, "a", "refs/tags/v1.0"));
+    }
+
+    @Test
+    public void deletedTagIsADelete() {
+        assertEquals(GitLabPushType.DELETE, GitLabPushType.classify("a", NO_COMMIT, "refs/tags/v1.0"));
+    }
+
+    @Test
+    public void onlyDeletesAndEmptyPushesAreNotBuildable() {
+        assertTrue(GitLabPushType.CREATE.isBuildable());
+        assertTrue(GitLabPushType.UPDATE.isBuildable());
+        assertTrue(GitLabPushType.TAG.isBuildable());
+        assertFalse(GitLabPushType.DELETE.isBuildable());
+        assertFalse(GitLabPushType.EMPTY.isBuildable());
+    }
+
+}
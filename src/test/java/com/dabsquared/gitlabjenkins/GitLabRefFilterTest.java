@@ -0,0 +1,43 @@
+package com.dabsquared.gitlabjenkins;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class GitLabRefFilterTest {
+
+    @Test
+    public void emptySpecsAllowEverything() {
+        final GitLabRefFilter filter = GitLabRefFilter.compile(null, "");
+        assertTrue(filter.isAllowed("master"));
+        assertTrue(filter.isAllowed("feature/x"));
+    }
+
+    @Test
+    public void plainNamesAndPatternsAreIncluded() {
+        final GitLabRefFilter filter = GitLabRefFilter.compile("master, release/*", null);
+        assertTrue(filter.isAllowed("master"));
+        assertTrue(filter.isAllowed("release/1.0"));
+        assertFalse(filter.isAllowed("release/1.0/hotfix"));
+        assertFalse(filter.isAllowed("develop"));
+    }
+
+    @Test
+    public void exclusionsWin() {
+        final GitLabRefFilter filter = GitLabRefFilter.compile("**", "wip/**,experimental");
+        assertTrue(filter.isAllowed("master"));
+        assertTrue(filter.isAllowed("feature/x"));
+        assertFalse(filter.isAllowed("wip/a/b"));
+        assertFalse(filter.isAllowed("experimental"));
+    }
+
+    @Test
+    public void onlyExclusionsIncludeNothingElse() {
+        // an include spec is required once any spec is given
+        final GitLabRefFilter filter = GitLabRefFilter.compile("", "experimental");
+        assertFalse(filter.isAllowed("experimental"));
+        assertFalse(filter.isAllowed("master"));
+    }
+
+}
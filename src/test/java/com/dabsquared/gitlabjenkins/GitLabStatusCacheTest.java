@@ -0,0 +1,82 @@
+package com.dabsquared.gitlabjenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+import org.kohsuke.stapler.HttpResponses.HttpResponseException;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+public class GitLabStatusCacheTest {
+
+    private static final String SHA = "0123456789abcdef0123456789abcdef01234567";
+
+    private final GitLabStatusCache cache = GitLabStatusCache.get();
+
+    @Test
+    public void invalidateDropsOnlyTheEntriesOfTheJob() {
+        final GitLabStatusCache.Entry entry = new GitLabStatusCache.Entry("{\"status\":\"success\"}");
+        cache.put("invalidate/job", SHA, entry);
+        cache.put("invalidate/job-2", SHA, entry);
+        assertSame(entry, cache.get("invalidate/job", SHA));
+
+        cache.invalidate("invalidate/job");
+        assertNull(cache.get("invalidate/job", SHA));
+        assertSame(entry, cache.get("invalidate/job-2", SHA));
+    }
+
+    @Test
+    public void etagFollowsTheBody() {
+        assertEquals(new GitLabStatusCache.Entry("{\"status\":\"success\"}").getETag(), new GitLabStatusCache.Entry("{\"status\":\"success\"}").getETag());
+        assertNotEquals(new GitLabStatusCache.Entry("{\"status\":\"success\"}").getETag(), new GitLabStatusCache.Entry("{\"status\":\"failed\"}").getETag());
+    }
+
+    @Test
+    public void statusIsWrittenWithItsETag() throws Exception {
+        final GitLabStatusCache.Entry entry = new GitLabStatusCache.Entry("{\"status\":\"success\"}");
+        final StaplerRequest req = mock(StaplerRequest.class);
+        final StaplerResponse rsp = mock(StaplerResponse.class);
+        final StringWriter body = new StringWriter();
+        when(rsp.getWriter()).thenReturn(new PrintWriter(body));
+
+        new GitLabWebHook().writeStatusJSON(req, rsp, entry, 0);
+
+        verify(rsp).setHeader("ETag", entry.getETag());
+        verify(rsp).setHeader("Cache-Control", "private, no-cache");
+        assertEquals(entry.getBody(), body.toString());
+    }
+
+    @Test
+    public void matchingETagIsAnsweredWithNotModified() throws Exception {
+        final GitLabStatusCache.Entry entry = new GitLabStatusCache.Entry("{\"status\":\"running\"}");
+        final StaplerRequest req = mock(StaplerRequest.class);
+        final StaplerResponse rsp = mock(StaplerResponse.class);
+        when(req.getHeader("If-None-Match")).thenReturn(entry.getETag());
+
+        try {
+            new GitLabWebHook().writeStatusJSON(req, rsp, entry, 5);
+            fail("a 304 must be thrown past handle()");
+        } catch (HttpResponseException e) {
+            e.generateResponse(req, rsp, null);
+        }
+        verify(rsp).setHeader("Cache-Control", "private, max-age=5");
+        verify(rsp).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(rsp, never()).getWriter();
+        verify(rsp, never()).sendError(anyInt());
+    }
+
+}